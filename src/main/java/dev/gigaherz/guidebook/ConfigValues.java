@@ -32,6 +32,13 @@ public class ConfigValues
     public static boolean flexibleScale = false;
     public static boolean flipScrollDirection = false;
     public static boolean useNaturalArrows = false;
+    public static boolean parallelBookLoading = true;
+    public static int bookLoadingThreads = 0;
+    public static boolean useBookCache = true;
+    public static boolean watchBooksFolder = true;
+    public static boolean lazyBookLoading = true;
+    public static boolean preloadBooksAfterLogin = false;
+    public static boolean streamingBookParser = true;
     public static String[] giveOnFirstJoin = new String[0];
 
     public static class ServerConfig
@@ -55,6 +62,13 @@ public class ConfigValues
         public final ForgeConfigSpec.BooleanValue flexibleScale;
         public final ForgeConfigSpec.BooleanValue flipScrollDirection;
         public final ForgeConfigSpec.BooleanValue useNaturalArrows;
+        public final ForgeConfigSpec.BooleanValue parallelBookLoading;
+        public final ForgeConfigSpec.IntValue bookLoadingThreads;
+        public final ForgeConfigSpec.BooleanValue useBookCache;
+        public final ForgeConfigSpec.BooleanValue watchBooksFolder;
+        public final ForgeConfigSpec.BooleanValue lazyBookLoading;
+        public final ForgeConfigSpec.BooleanValue preloadBooksAfterLogin;
+        public final ForgeConfigSpec.BooleanValue streamingBookParser;
 
         ClientConfig(ForgeConfigSpec.Builder builder)
         {
@@ -75,6 +89,37 @@ public class ConfigValues
                     .comment("If TRUE, flips the buttons on the GUI to point how the page flips, and not what direction the book advances.")
                     .define("use_natural_arrows", false);
             builder.pop();
+            builder.comment("Options for controlling how books are loaded")
+                    .push("loading");
+            parallelBookLoading = builder
+                    .comment("If TRUE, independent books are parsed concurrently during resource reload.")
+                    .translation("text.guidebook.config.parallel_book_loading")
+                    .define("parallel_book_loading", true);
+            bookLoadingThreads = builder
+                    .comment("Number of threads used to parse books when parallel loading is enabled. Use 0 for one less than the available processors.")
+                    .translation("text.guidebook.config.book_loading_threads")
+                    .defineInRange("book_loading_threads", 0, 0, 64);
+            useBookCache = builder
+                    .comment("If TRUE, parsed books are stored in config/books/.cache and loaded from there while their sources are unchanged.")
+                    .translation("text.guidebook.config.use_book_cache")
+                    .define("use_book_cache", true);
+            watchBooksFolder = builder
+                    .comment("If TRUE, books in config/books are reloaded as soon as their files change, without a full resource reload.")
+                    .translation("text.guidebook.config.watch_books_folder")
+                    .define("watch_books_folder", true);
+            lazyBookLoading = builder
+                    .comment("If TRUE, only the title and cover of each book are read while loading resources, and the rest of the book is loaded the first time it is opened.")
+                    .translation("text.guidebook.config.lazy_book_loading")
+                    .define("lazy_book_loading", true);
+            preloadBooksAfterLogin = builder
+                    .comment("If TRUE, books that have not been opened yet are loaded in the background shortly after joining a world.")
+                    .translation("text.guidebook.config.preload_books_after_login")
+                    .define("preload_books_after_login", false);
+            streamingBookParser = builder
+                    .comment("If TRUE, books are parsed as a stream, one section at a time. If FALSE, the whole book is read into a DOM tree first, like older versions did.")
+                    .translation("text.guidebook.config.streaming_book_parser")
+                    .define("streaming_book_parser", true);
+            builder.pop();
         }
     }
 
@@ -84,6 +129,20 @@ public class ConfigValues
         flexibleScale = CLIENT.flexibleScale.get();
         flipScrollDirection = CLIENT.flipScrollDirection.get();
         useNaturalArrows = CLIENT.useNaturalArrows.get();
+        parallelBookLoading = CLIENT.parallelBookLoading.get();
+        bookLoadingThreads = CLIENT.bookLoadingThreads.get();
+        useBookCache = CLIENT.useBookCache.get();
+        watchBooksFolder = CLIENT.watchBooksFolder.get();
+        lazyBookLoading = CLIENT.lazyBookLoading.get();
+        preloadBooksAfterLogin = CLIENT.preloadBooksAfterLogin.get();
+        streamingBookParser = CLIENT.streamingBookParser.get();
+    }
+
+    public static int getBookLoadingParallelism()
+    {
+        if (bookLoadingThreads > 0)
+            return bookLoadingThreads;
+        return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
     }
 
     public static void refreshServer()
@@ -2,11 +2,14 @@ package dev.gigaherz.guidebook.client;
 
 import com.mojang.blaze3d.vertex.DefaultVertexFormat;
 import com.mojang.blaze3d.vertex.VertexFormat;
+import dev.gigaherz.guidebook.ConfigValues;
 import dev.gigaherz.guidebook.GuidebookMod;
+import dev.gigaherz.guidebook.guidebook.BookFolderWatcher;
 import dev.gigaherz.guidebook.guidebook.BookRegistry;
 import dev.gigaherz.guidebook.guidebook.client.AnimatedBookBackground;
 import dev.gigaherz.guidebook.guidebook.client.BookBakedModel;
 import dev.gigaherz.guidebook.guidebook.client.SpecialBakedModel;
+import dev.gigaherz.guidebook.guidebook.client.TextMeasureCache;
 import dev.gigaherz.guidebook.guidebook.conditions.AdvancementCondition;
 import dev.gigaherz.guidebook.guidebook.conditions.BasicConditions;
 import dev.gigaherz.guidebook.guidebook.conditions.CompositeCondition;
@@ -18,7 +21,9 @@ import net.minecraft.client.renderer.RenderType;
 import net.minecraft.client.renderer.ShaderInstance;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.packs.resources.ReloadableResourceManager;
+import net.minecraft.server.packs.resources.ResourceManagerReloadListener;
 import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
 import net.minecraftforge.client.event.ModelRegistryEvent;
 import net.minecraftforge.client.event.ParticleFactoryRegisterEvent;
 import net.minecraftforge.client.event.RegisterShadersEvent;
@@ -28,6 +33,7 @@ import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.ModList;
 import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.event.config.ModConfigEvent;
 import net.minecraftforge.fml.event.lifecycle.FMLConstructModEvent;
 
 import java.io.IOException;
@@ -47,7 +53,10 @@ public class ClientHandlers
 
         // TODO: ClientCommandHandler.instance.registerCommand(new GbookCommand());
 
-        BookRegistry.initClientResourceListener((ReloadableResourceManager) Minecraft.getInstance().getResourceManager());
+        ReloadableResourceManager resourceManager = (ReloadableResourceManager) Minecraft.getInstance().getResourceManager();
+        BookRegistry.initClientResourceListener(resourceManager);
+        // Fonts may have changed, so text has to be measured again.
+        resourceManager.registerReloadListener((ResourceManagerReloadListener) manager -> TextMeasureCache.clear());
     }
 
     @Mod.EventBusSubscriber(value = Dist.CLIENT, modid = GuidebookMod.MODID, bus = Mod.EventBusSubscriber.Bus.MOD)
@@ -65,6 +74,14 @@ public class ClientHandlers
             ClientHandlers.clientInit();
         }
 
+        @SubscribeEvent
+        public static void configChanged(ModConfigEvent event)
+        {
+            // Read from the spec, since ConfigValues may not have been refreshed yet.
+            if (event.getConfig().getSpec() == ConfigValues.CLIENT_SPEC)
+                BookFolderWatcher.setEnabled(ConfigValues.CLIENT.watchBooksFolder.get());
+        }
+
         @SubscribeEvent
         public static void modelRegistry(ModelRegistryEvent event)
         {
@@ -85,6 +102,17 @@ public class ClientHandlers
         }
     }
 
+    @Mod.EventBusSubscriber(value = Dist.CLIENT, modid = GuidebookMod.MODID, bus = Mod.EventBusSubscriber.Bus.FORGE)
+    public static class ForgeClientEvents
+    {
+        @SubscribeEvent
+        public static void loggedIn(ClientPlayerNetworkEvent.LoggedInEvent event)
+        {
+            if (ConfigValues.preloadBooksAfterLogin)
+                BookRegistry.preloadBooks();
+        }
+    }
+
     public static RenderType brightSolid(ResourceLocation texture)
     {
         return CustomRenderTypes.BRIGHT_SOLID.apply(texture);
@@ -0,0 +1,211 @@
+package dev.gigaherz.guidebook.guidebook;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import dev.gigaherz.guidebook.GuidebookMod;
+import net.minecraft.resources.ResourceLocation;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the config/books folder, and reloads the books affected by a change without going through a full resource reload.
+ * Changes are debounced: the books are only reloaded once nothing else has changed for a short while,
+ * so that saving many files at once results in a single rebuild.
+ * The watcher only runs while hot reloading is enabled in the config, see {@link #setEnabled}.
+ */
+public class BookFolderWatcher
+{
+    private static final long DEBOUNCE_MS = 500;
+
+    @Nullable
+    private static Thread thread;
+    @Nullable
+    private static WatchService service;
+
+    public static synchronized void setEnabled(boolean enabled)
+    {
+        if (enabled)
+            start();
+        else
+            stop();
+    }
+
+    public static synchronized void start()
+    {
+        if (thread != null)
+            return;
+
+        File booksFolder = BookRegistry.getBooksFolder();
+        if (booksFolder == null)
+            return;
+
+        WatchService newService;
+        try
+        {
+            newService = FileSystems.getDefault().newWatchService();
+        }
+        catch (IOException e)
+        {
+            GuidebookMod.logger.warn("Could not watch the books folder for changes", e);
+            return;
+        }
+
+        service = newService;
+        thread = new Thread(() -> watch(booksFolder.toPath(), newService), "Guidebook-Folder-Watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops watching the books folder. Changes that were still waiting for the debounce interval are dropped.
+     */
+    public static synchronized void stop()
+    {
+        if (thread == null)
+            return;
+
+        thread.interrupt();
+        // Also wakes up the thread if it's waiting for changes.
+        closeService(service);
+        thread = null;
+        service = null;
+    }
+
+    private static void closeService(@Nullable WatchService service)
+    {
+        if (service == null)
+            return;
+        try
+        {
+            service.close();
+        }
+        catch (IOException e)
+        {
+            GuidebookMod.logger.warn("Could not close the books folder watcher", e);
+        }
+    }
+
+    private static void watch(Path root, WatchService service)
+    {
+        Map<WatchKey, Path> directories = Maps.newHashMap();
+        Set<Path> changed = Sets.newHashSet();
+        boolean overflow = false;
+        try
+        {
+            registerAll(root, root, service, directories);
+
+            while (true)
+            {
+                WatchKey key = changed.isEmpty() && !overflow ? service.take() : service.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+                if (key == null)
+                {
+                    // Nothing else changed during the debounce interval.
+                    reload(root, overflow ? null : changed);
+                    changed.clear();
+                    overflow = false;
+                    continue;
+                }
+
+                Path directory = directories.get(key);
+                for (WatchEvent<?> event : key.pollEvents())
+                {
+                    if (event.kind() == OVERFLOW)
+                    {
+                        overflow = true;
+                        continue;
+                    }
+
+                    Path path = directory.resolve((Path) event.context());
+                    if (isIgnored(root, path))
+                        continue;
+
+                    if (event.kind() == ENTRY_CREATE && Files.isDirectory(path))
+                    {
+                        registerAll(root, path, service, directories);
+                    }
+
+                    changed.add(path);
+                }
+
+                if (!key.reset())
+                {
+                    directories.remove(key);
+                }
+            }
+        }
+        catch (InterruptedException | ClosedWatchServiceException e)
+        {
+            // Stopped.
+        }
+        catch (IOException e)
+        {
+            GuidebookMod.logger.warn("Stopped watching the books folder for changes", e);
+        }
+        finally
+        {
+            closeService(service);
+        }
+    }
+
+    private static void reload(Path root, @Nullable Set<Path> changed)
+    {
+        try
+        {
+            BookRegistry.reloadChangedFiles(changed != null ? toLocations(root, changed) : null);
+        }
+        catch (RuntimeException e)
+        {
+            // Books being edited are often broken halfway through, that must not stop the watcher.
+            GuidebookMod.logger.error("Error reloading books after changes in the books folder", e);
+        }
+    }
+
+    /**
+     * Converts changed files to the locations used to include them from books in the config folder.
+     */
+    private static Set<ResourceLocation> toLocations(Path root, Set<Path> changed)
+    {
+        Set<ResourceLocation> locations = Sets.newHashSet();
+        for (Path path : changed)
+        {
+            String relative = root.relativize(path).toString().replace(File.separatorChar, '/');
+            ResourceLocation location = ResourceLocation.tryParse(GuidebookMod.MODID + ":" + relative);
+            if (location != null)
+            {
+                locations.add(location);
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * The compiled cache is written by the loader itself, and the resources folder is a resource pack, which needs a resource reload.
+     */
+    private static boolean isIgnored(Path root, Path path)
+    {
+        return path.startsWith(root.resolve(".cache")) || path.startsWith(root.resolve("resources"));
+    }
+
+    private static void registerAll(Path root, Path start, WatchService service, Map<WatchKey, Path> directories) throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(start))
+        {
+            for (Path directory : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator)
+            {
+                if (isIgnored(root, directory))
+                    continue;
+
+                directories.put(directory.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), directory);
+            }
+        }
+    }
+}
@@ -1,13 +1,21 @@
 package dev.gigaherz.guidebook.guidebook;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
+import dev.gigaherz.guidebook.ConfigValues;
 import dev.gigaherz.guidebook.GuidebookMod;
+import dev.gigaherz.guidebook.guidebook.book.BookCache;
+import dev.gigaherz.guidebook.guidebook.book.BookDependencies;
 import dev.gigaherz.guidebook.guidebook.book.BookDocument;
 import dev.gigaherz.guidebook.guidebook.book.BookDocumentParser;
+import dev.gigaherz.guidebook.guidebook.book.IncludeCache;
+import dev.gigaherz.guidebook.guidebook.client.GuidebookScreen;
 import dev.gigaherz.guidebook.guidebook.templates.TemplateLibrary;
+import net.minecraft.Util;
 import net.minecraft.client.Minecraft;
 import net.minecraft.network.chat.Component;
 import net.minecraft.resources.ResourceLocation;
@@ -20,7 +28,7 @@ import net.minecraft.server.packs.repository.RepositorySource;
 import net.minecraft.server.packs.resources.ReloadableResourceManager;
 import net.minecraft.server.packs.resources.Resource;
 import net.minecraft.server.packs.resources.ResourceManager;
-import net.minecraft.server.packs.resources.ResourceManagerReloadListener;
+import net.minecraft.server.packs.resources.PreparableReloadListener;
 import net.minecraft.world.item.ItemStack;
 import org.apache.commons.io.FileUtils;
 
@@ -29,23 +37,32 @@ import java.io.*;
 import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class BookRegistry
 {
     public static final Set<ResourceLocation> REGISTRY = Sets.newHashSet();
 
-    private static boolean booksLoaded = false;
-    private static final Map<ResourceLocation, BookDocument> LOADED_BOOKS = Maps.newHashMap();
+    private static final long PRELOAD_DELAY_SECONDS = 10;
+
+    private static volatile boolean booksLoaded = false;
+    private static volatile Map<ResourceLocation, BookDocument> LOADED_BOOKS = ImmutableMap.of();
+    private static int publishedSequence = 0;
 
     public static Map<ResourceLocation, BookDocument> getLoadedBooks()
     {
         if (!booksLoaded)
         {
-            parseAllBooks(Minecraft.getInstance().getResourceManager());
+            publishBooks(BookReloadCoordinator.awaitSnapshot());
         }
-        return Collections.unmodifiableMap(LOADED_BOOKS);
+        return LOADED_BOOKS;
     }
 
     public static void registerBook(ResourceLocation loc)
@@ -74,14 +91,35 @@ public class BookRegistry
         return loc == null ? null : get(new ResourceLocation(loc));
     }
 
-    public static void parseAllBooks(ResourceManager manager)
+    /**
+     * Collects the section references without a valid target, for every book that has any.
+     * Books that were not opened yet are loaded by this.
+     */
+    public static Map<ResourceLocation, List<String>> getBrokenReferences()
     {
-        booksLoaded = true;
+        Map<ResourceLocation, List<String>> broken = Maps.newLinkedHashMap();
+        for (Map.Entry<ResourceLocation, BookDocument> entry : getLoadedBooks().entrySet())
+        {
+            List<String> references = entry.getValue().getBrokenReferences();
+            if (!references.isEmpty())
+            {
+                broken.put(entry.getKey(), references);
+            }
+        }
+        return broken;
+    }
 
+    /**
+     * Reads and parses every known book without publishing the result, so it can be called from a background thread.
+     * Use {@link BookReloadCoordinator} instead of calling this directly, so that books are not parsed more than once per reload.
+     *
+     * @param lang     the language to load localized books for, see {@link #getSelectedLanguage()}
+     * @param previous the books from the last load, which are reused if their sources haven't changed
+     */
+    public static Map<ResourceLocation, BookDocument> loadAllBooks(ResourceManager manager, String lang, Map<ResourceLocation, BookDocument> previous)
+    {
         TemplateLibrary.clear();
 
-        LOADED_BOOKS.clear();
-
         BookDocumentParser.invalidateIncludeCache();
 
         Set<ResourceLocation> toLoad = Sets.newHashSet(REGISTRY);
@@ -107,21 +145,212 @@ public class BookRegistry
             }
         }
 
-        loadRawBookFiles();
+        // Books in the config folder take precedence over the ones in resource packs.
+        Map<ResourceLocation, Supplier<BookDocument>> loaders = Maps.newLinkedHashMap();
+        gatherRawBookFiles(loaders, previous);
 
-        var lang = Minecraft.getInstance().getLanguageManager().getSelected().getCode();
-        
         for (ResourceLocation loc : toLoad)
         {
-            if (!LOADED_BOOKS.containsKey(loc))
+            if (!loaders.containsKey(loc))
             {
-                BookDocument book = parseBook(manager, loc, lang);
-                if (book != null)
-                    LOADED_BOOKS.put(loc, book);
+                loaders.put(loc, () -> parseBook(manager, loc, lang, previous.get(loc)));
+            }
+        }
+
+        Map<ResourceLocation, BookDocument> books = loadBooks(loaders);
+
+        long unchanged = books.entrySet().stream().filter(e -> previous.get(e.getKey()) == e.getValue()).count();
+        GuidebookMod.logger.info("{} of {} books were unchanged and did not need parsing", unchanged, books.size());
+
+        return ImmutableMap.copyOf(books);
+    }
+
+    /**
+     * @return the language that localized books are loaded for. The language manager is only updated on the game thread,
+     * so this should be read there whenever possible.
+     */
+    public static String getSelectedLanguage()
+    {
+        return Minecraft.getInstance().getLanguageManager().getSelected().getCode();
+    }
+
+    private static void publishBooks(BookReloadCoordinator.Snapshot snapshot)
+    {
+        // Books that were reused keep their rendering, which lays them out again if the fonts were reloaded, see BookRendering#refreshFontGeneration.
+        replaceBooks(snapshot);
+    }
+
+    /**
+     * Makes the books of the snapshot the loaded ones, unless the books of a later load were published already.
+     *
+     * @return false if the snapshot was out of date
+     */
+    private static synchronized boolean replaceBooks(BookReloadCoordinator.Snapshot snapshot)
+    {
+        if (snapshot.sequence() <= publishedSequence)
+            return false;
+
+        publishedSequence = snapshot.sequence();
+        LOADED_BOOKS = snapshot.books();
+        booksLoaded = true;
+        return true;
+    }
+
+    /**
+     * Reparses the books built from any of the given files in the config folder, and publishes them on the main thread.
+     * Only books that have one of the files as their root, or that include it directly or through a template library, are parsed again.
+     * Called from the {@link BookFolderWatcher} thread. Runs through {@link BookReloadCoordinator#runLoad}, so it never overlaps
+     * a resource reload, and starts from the books that reload loaded even if they weren't published yet.
+     *
+     * @param changed the changed files as "gbook:" locations, or null if the changes are unknown and every book must be checked
+     */
+    static void reloadChangedFiles(@Nullable Set<ResourceLocation> changed)
+    {
+        File booksFolder = getBooksFolder();
+        if (!booksLoaded || booksFolder == null)
+            return;
+
+        // The resource manager and the selected language belong to the game thread, and are replaced during resource reloads.
+        Minecraft mc = Minecraft.getInstance();
+        GameResources resources = mc.submit(() -> new GameResources(mc.getResourceManager(), getSelectedLanguage())).join();
+
+        BookReloadCoordinator.Snapshot snapshot = BookReloadCoordinator.runLoad(previous -> reloadChangedBooks(previous, changed, booksFolder, resources));
+        mc.execute(() -> publishReloadedBooks(snapshot));
+    }
+
+    private static Map<ResourceLocation, BookDocument> reloadChangedBooks(Map<ResourceLocation, BookDocument> previous,
+                                                                          @Nullable Set<ResourceLocation> changed, File booksFolder,
+                                                                          GameResources resources)
+    {
+        ResourceManager manager = resources.manager();
+        String lang = resources.lang();
+
+        // Every xml file in the config folder is a book, so creating or deleting one changes the set of books.
+        boolean booksAddedOrRemoved = changed == null || changed.stream().anyMatch(loc ->
+                loc.getPath().endsWith(".xml") && new File(booksFolder, loc.getPath()).isFile() != previous.containsKey(loc));
+
+        Map<ResourceLocation, BookDocument> books;
+        if (booksAddedOrRemoved)
+        {
+            // Unchanged books are still reused, based on their content hashes.
+            books = loadAllBooks(manager, lang, previous);
+        }
+        else
+        {
+            BookDocumentParser.invalidateIncludeCache();
+            TemplateLibrary.invalidate(changed);
+
+            Map<ResourceLocation, Supplier<BookDocument>> loaders = Maps.newLinkedHashMap();
+            previous.forEach((loc, book) -> {
+                // Books that were never opened haven't recorded their includes yet, so any of the changed files could be one of them.
+                // They are read again without reusing anything, which only parses their header until they are opened.
+                boolean unloaded = !book.isContentLoaded();
+                if (unloaded || changed.contains(loc) || book.getDependencies().dependsOn(changed))
+                {
+                    BookDocument reusable = unloaded ? null : book;
+                    File file = new File(booksFolder, loc.getPath());
+                    if (loc.getNamespace().equals(GuidebookMod.MODID) && file.isFile())
+                        loaders.put(loc, () -> parseBook(loc, file, reusable));
+                    else
+                        loaders.put(loc, () -> parseBook(manager, loc, lang, reusable));
+                }
+            });
+
+            if (loaders.isEmpty())
+                return previous;
+
+            Map<ResourceLocation, BookDocument> reloaded = loadBooks(loaders);
+
+            Map<ResourceLocation, BookDocument> merged = Maps.newLinkedHashMap(previous);
+            loaders.keySet().forEach(merged::remove);
+            merged.putAll(reloaded);
+            books = ImmutableMap.copyOf(merged);
+        }
+
+        return books;
+    }
+
+    private static void publishReloadedBooks(BookReloadCoordinator.Snapshot snapshot)
+    {
+        Map<ResourceLocation, BookDocument> previous = LOADED_BOOKS;
+        Map<ResourceLocation, BookDocument> books = snapshot.books();
+        if (!replaceBooks(snapshot) || books == previous)
+        {
+            // A later load was published in the meantime and already saw the changed files, or no book used them.
+            return;
+        }
+
+        long changed = books.entrySet().stream().filter(e -> previous.get(e.getKey()) != e.getValue()).count();
+        GuidebookMod.logger.info("Reloaded {} books after changes in the books folder", changed);
+
+        if (Minecraft.getInstance().screen instanceof GuidebookScreen screen)
+        {
+            BookDocument book = books.get(screen.bookLocation);
+            if (book != null && book != previous.get(screen.bookLocation))
+            {
+                screen.reloadBook(book);
             }
         }
     }
 
+    private static Map<ResourceLocation, BookDocument> loadBooks(Map<ResourceLocation, Supplier<BookDocument>> loaders)
+    {
+        long start = System.nanoTime();
+
+        Map<ResourceLocation, BookDocument> books = Maps.newLinkedHashMap();
+        int parallelism = ConfigValues.getBookLoadingParallelism();
+        if (ConfigValues.parallelBookLoading && parallelism > 1 && loaders.size() > 1)
+        {
+            ForkJoinPool pool = new ForkJoinPool(parallelism, BookRegistry::newLoaderThread, null, false);
+            try
+            {
+                Map<ResourceLocation, ForkJoinTask<BookDocument>> tasks = Maps.newLinkedHashMap();
+                loaders.forEach((loc, loader) -> tasks.put(loc, pool.submit(() -> timedParse(loc, loader))));
+                tasks.forEach((loc, task) -> {
+                    BookDocument book = task.join();
+                    if (book != null)
+                        books.put(loc, book);
+                });
+            }
+            finally
+            {
+                pool.shutdown();
+            }
+        }
+        else
+        {
+            parallelism = 1;
+            loaders.forEach((loc, loader) -> {
+                BookDocument book = timedParse(loc, loader);
+                if (book != null)
+                    books.put(loc, book);
+            });
+        }
+
+        GuidebookMod.logger.info("Loaded {} books in {} ms using {} thread(s)", books.size(), (System.nanoTime() - start) / 1000000, parallelism);
+        GuidebookMod.logger.debug("Include cache: {}", IncludeCache.getStats());
+
+        return books;
+    }
+
+    @Nullable
+    private static BookDocument timedParse(ResourceLocation loc, Supplier<BookDocument> loader)
+    {
+        long start = System.nanoTime();
+        BookDocument book = loader.get();
+        GuidebookMod.logger.debug("Parsed book {} in {} ms", loc, (System.nanoTime() - start) / 1000000);
+        return book;
+    }
+
+    private static ForkJoinWorkerThread newLoaderThread(ForkJoinPool pool)
+    {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("Guidebook-Loader-" + thread.getPoolIndex());
+        // The default factory gives workers the system class loader, which can't see mod classes.
+        thread.setContextClassLoader(BookRegistry.class.getClassLoader());
+        return thread;
+    }
+
     private static Type listType = new TypeToken<List<String>>()
     {
     }.getType();
@@ -136,7 +365,7 @@ public class BookRegistry
     }
 
     @Nullable
-    private static BookDocument parseBook(ResourceManager manager, ResourceLocation location, String lang)
+    private static BookDocument parseBook(ResourceManager manager, ResourceLocation location, String lang, @Nullable BookDocument previous)
     {
         BookDocument bookDocument = new BookDocument(location);
         try
@@ -156,6 +385,7 @@ public class BookRegistry
             String localizedPath = pathWithoutExtension + "." + lang + extension;
             ResourceLocation localizedLoc = new ResourceLocation(domain, localizedPath);
 
+            ResourceLocation source = localizedLoc;
             Resource bookResource;
             try
             {
@@ -168,11 +398,12 @@ public class BookRegistry
 
             if (bookResource == null)
             {
+                source = bookLocation;
                 bookResource = manager.getResourceOrThrow(bookLocation);
             }
             try (InputStream stream = bookResource.open())
             {
-                return BookDocumentParser.parseBook(bookDocument, stream, false);
+                return parseOrReuse(bookDocument, previous, source, stream.readAllBytes(), false);
             }
         }
         catch (IOException e)
@@ -183,12 +414,12 @@ public class BookRegistry
     }
 
     @Nullable
-    private static BookDocument parseBook(ResourceLocation location, File file)
+    private static BookDocument parseBook(ResourceLocation location, File file, @Nullable BookDocument previous)
     {
         BookDocument bookDocument = new BookDocument(location);
         try(InputStream stream = new FileInputStream(file))
         {
-            return BookDocumentParser.parseBook(bookDocument, stream, true);
+            return parseOrReuse(bookDocument, previous, location, stream.readAllBytes(), true);
         }
         catch (IOException e)
         {
@@ -197,7 +428,93 @@ public class BookRegistry
         return bookDocument;
     }
 
-    private static void loadRawBookFiles()
+    /**
+     * @param source the location the data was read from, which is read again when the body of the book is loaded,
+     *               so that books that are never opened don't keep their source in memory
+     */
+    @Nullable
+    private static BookDocument parseOrReuse(BookDocument bookDocument, @Nullable BookDocument previous, ResourceLocation source, byte[] data, boolean loadedFromConfigFolder)
+    {
+        HashCode rootHash = BookDependencies.hashRoot(data, loadedFromConfigFolder);
+        if (previous != null && previous.getDependencies().isUpToDate(rootHash, loc -> hashInclude(loc, loadedFromConfigFolder)))
+        {
+            return previous;
+        }
+
+        bookDocument.getDependencies().setRoot(rootHash);
+        if (!BookDocumentParser.parseHeader(bookDocument, data))
+            return null;
+
+        bookDocument.setContentLoader(() -> loadContent(bookDocument, rootHash, source, loadedFromConfigFolder));
+        if (!ConfigValues.lazyBookLoading)
+        {
+            bookDocument.ensureContentLoaded();
+        }
+        return bookDocument;
+    }
+
+    /**
+     * Loads the body of a book, from the compiled cache if possible.
+     */
+    private static void loadContent(BookDocument bookDocument, HashCode rootHash, ResourceLocation source, boolean loadedFromConfigFolder)
+    {
+        byte[] data;
+        try
+        {
+            data = BookDocumentParser.readInclude(source, loadedFromConfigFolder);
+        }
+        catch (IOException e)
+        {
+            bookDocument.initializeWithLoadError(e.toString());
+            return;
+        }
+
+        // The source may have changed since the header was read, in which case the cache entry for the old one can't be used.
+        HashCode currentHash = BookDependencies.hashRoot(data, loadedFromConfigFolder);
+        if (!currentHash.equals(rootHash))
+        {
+            GuidebookMod.logger.debug("Book {} changed since its header was read", bookDocument.getLocation());
+            rootHash = currentHash;
+            bookDocument.getDependencies().setRoot(rootHash);
+        }
+
+        if (ConfigValues.useBookCache)
+        {
+            long start = System.nanoTime();
+            if (BookCache.load(bookDocument, rootHash, loc -> hashInclude(loc, loadedFromConfigFolder)))
+            {
+                // Broken references are stored unresolved, check them again so they are still reported.
+                BookDocumentParser.resolveReferences(bookDocument);
+                GuidebookMod.logger.debug("Loaded book {} from the compiled cache in {} ms", bookDocument.getLocation(), (System.nanoTime() - start) / 1000000);
+                return;
+            }
+        }
+
+        long start = System.nanoTime();
+        BookDocumentParser.parseBook(bookDocument, new ByteArrayInputStream(data), loadedFromConfigFolder);
+        GuidebookMod.logger.debug("Parsed book {} from XML in {} ms, {} template elements shared instead of copied",
+                bookDocument.getLocation(), (System.nanoTime() - start) / 1000000, bookDocument.getSharedElementCount());
+
+        if (ConfigValues.useBookCache)
+        {
+            BookCache.store(bookDocument);
+        }
+    }
+
+    @Nullable
+    private static HashCode hashInclude(ResourceLocation location, boolean loadedFromConfigFolder)
+    {
+        try
+        {
+            return BookDependencies.hash(BookDocumentParser.readInclude(location, loadedFromConfigFolder));
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+
+    private static void gatherRawBookFiles(Map<ResourceLocation, Supplier<BookDocument>> loaders, Map<ResourceLocation, BookDocument> previous)
     {
         File booksFolder = getBooksFolder();
         if (booksFolder == null)
@@ -211,11 +528,9 @@ public class BookRegistry
             {
                 ResourceLocation loc = new ResourceLocation(GuidebookMod.MODID, relativePath(booksFolder, f));
 
-                if (!LOADED_BOOKS.containsKey(loc))
+                if (!loaders.containsKey(loc))
                 {
-                    BookDocument book = parseBook(loc, f);
-                    if (book != null)
-                        LOADED_BOOKS.put(loc, book);
+                    loaders.put(loc, () -> parseBook(loc, f, previous.get(loc)));
                 }
             }
         }
@@ -323,25 +638,61 @@ public class BookRegistry
         });
     }
 
+    /**
+     * Loads the body of every book that hasn't been opened yet, in the background.
+     */
+    public static void preloadBooks()
+    {
+        Collection<BookDocument> books = getLoadedBooks().values();
+        CompletableFuture.runAsync(() -> {
+            long start = System.nanoTime();
+            int loaded = 0;
+            for (BookDocument book : books)
+            {
+                if (!book.isContentLoaded())
+                {
+                    book.ensureContentLoaded();
+                    loaded++;
+                }
+            }
+            GuidebookMod.logger.info("Preloaded {} books in {} ms", loaded, (System.nanoTime() - start) / 1000000);
+        }, CompletableFuture.delayedExecutor(PRELOAD_DELAY_SECONDS, TimeUnit.SECONDS, Util.backgroundExecutor()));
+    }
+
     public static ResourceLocation[] gatherBookModels()
     {
-        return getLoadedBooks().values().stream().map(BookDocument::getModel).filter(Objects::nonNull).distinct().toArray(ResourceLocation[]::new);
+        return gatherBookModels(getLoadedBooks());
+    }
+
+    public static ResourceLocation[] gatherBookModels(Map<ResourceLocation, BookDocument> books)
+    {
+        return books.values().stream().map(BookDocument::getModel).filter(Objects::nonNull).distinct().toArray(ResourceLocation[]::new);
     }
 
     public static ResourceLocation[] gatherBookCovers()
     {
-        return getLoadedBooks().values().stream().map(BookDocument::getCover).filter(Objects::nonNull).distinct().toArray(ResourceLocation[]::new);
+        return gatherBookCovers(getLoadedBooks());
+    }
+
+    public static ResourceLocation[] gatherBookCovers(Map<ResourceLocation, BookDocument> books)
+    {
+        return books.values().stream().map(BookDocument::getCover).filter(Objects::nonNull).distinct().toArray(ResourceLocation[]::new);
     }
 
     public static void initClientResourceListener(ReloadableResourceManager clientResourceManager)
     {
-        clientResourceManager.registerReloadListener((ResourceManagerReloadListener) ((resourceManager) -> {
-            booksLoaded = false;
-        }));
+        clientResourceManager.registerReloadListener((PreparableReloadListener) (barrier, resourceManager, prepareProfiler, applyProfiler, backgroundExecutor, gameExecutor) ->
+                BookReloadCoordinator.beginReload(resourceManager, backgroundExecutor)
+                        .thenCompose(barrier::wait)
+                        .thenAcceptAsync(BookRegistry::publishBooks, gameExecutor));
     }
 
     public static Collection<ResourceLocation> getBooksList()
     {
         return getLoadedBooks().keySet();
     }
+
+    private record GameResources(ResourceManager manager, String lang)
+    {
+    }
 }
@@ -0,0 +1,142 @@
+package dev.gigaherz.guidebook.guidebook;
+
+import com.google.common.collect.ImmutableMap;
+import dev.gigaherz.guidebook.GuidebookMod;
+import dev.gigaherz.guidebook.guidebook.book.BookDocument;
+import net.minecraft.Util;
+import net.minecraft.client.Minecraft;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.PackResources;
+import net.minecraft.server.packs.resources.ResourceManager;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+/**
+ * Makes sure every book is parsed only once per resource reload.
+ * A reload is told apart from the others by its resource packs, which are opened again for every reload. Whoever needs the books first
+ * during a reload starts the load, whether that's the book reload listener or the model loader (which may run first, since the model
+ * manager's listener is registered before ours), and everything else that needs them during that reload shares the resulting snapshot.
+ * Reloads caused by changes in the books folder go through {@link #runLoad} too, so that only one load runs at a time.
+ */
+public class BookReloadCoordinator
+{
+    private static final AtomicInteger parseCount = new AtomicInteger();
+
+    private static final Object loadLock = new Object();
+    // Guarded by loadLock.
+    private static int loadCount = 0;
+    private static Map<ResourceLocation, BookDocument> latestBooks = ImmutableMap.of();
+
+    private static int generation = 0;
+    private static List<PackResources> currentPacks = List.of();
+    @Nullable
+    private static CompletableFuture<Snapshot> currentLoad;
+
+    /**
+     * Starts loading the books for the given resource manager, unless a load for the same resource packs is already running or done.
+     */
+    public static CompletableFuture<Snapshot> beginReload(ResourceManager manager, Executor executor)
+    {
+        List<PackResources> packs = manager.listPacks().toList();
+        String lang = BookRegistry.getSelectedLanguage();
+        CompletableFuture<Snapshot> load;
+        int gen;
+        synchronized (BookReloadCoordinator.class)
+        {
+            if (currentLoad != null && isSamePacks(packs, currentPacks))
+                return currentLoad;
+
+            gen = ++generation;
+            currentPacks = packs;
+            load = currentLoad = new CompletableFuture<>();
+        }
+
+        // Started outside of the lock, so that anyone else asking for this same reload gets the pending load instead of waiting for the lock.
+        executor.execute(() -> {
+            try
+            {
+                load.complete(load(manager, lang, gen));
+            }
+            catch (Throwable e)
+            {
+                load.completeExceptionally(e);
+            }
+        });
+        return load;
+    }
+
+    /**
+     * Returns the snapshot of the current resource packs, waiting for it if it's still being parsed,
+     * or starting it on the background executor if no one started it yet.
+     * The books are never parsed on the calling thread, which is usually the render thread or a model baking task.
+     */
+    public static Snapshot awaitSnapshot()
+    {
+        return beginReload(Minecraft.getInstance().getResourceManager(), Util.backgroundExecutor()).join();
+    }
+
+    private static boolean isSamePacks(List<PackResources> a, List<PackResources> b)
+    {
+        if (a.size() != b.size())
+            return false;
+        for (int i = 0; i < a.size(); i++)
+        {
+            if (a.get(i) != b.get(i))
+                return false;
+        }
+        return true;
+    }
+
+    private static Snapshot load(ResourceManager manager, String lang, int gen)
+    {
+        int parses = parseCount.incrementAndGet();
+        Snapshot snapshot = runLoad(previous -> BookRegistry.loadAllBooks(manager, lang, previous));
+        GuidebookMod.logger.debug("Book reload generation {} parsed {} books (total parses: {})", gen, snapshot.books().size(), parses);
+        return snapshot;
+    }
+
+    /**
+     * Runs a load of the books, once any other load has finished. The loader is given the books from the last load,
+     * which may not have been published yet, so that its result doesn't lose the changes made by that one.
+     *
+     * @return the loaded books, numbered after every load that came before them
+     */
+    public static Snapshot runLoad(UnaryOperator<Map<ResourceLocation, BookDocument>> loader)
+    {
+        synchronized (loadLock)
+        {
+            Map<ResourceLocation, BookDocument> books = loader.apply(latestBooks);
+            latestBooks = books;
+            return new Snapshot(++loadCount, books);
+        }
+    }
+
+    /**
+     * @return the number of resource reloads the coordinator has seen.
+     */
+    public static synchronized int getGeneration()
+    {
+        return generation;
+    }
+
+    /**
+     * @return the number of full book parses performed. Should always match {@link #getGeneration()}.
+     */
+    public static int getParseCount()
+    {
+        return parseCount.get();
+    }
+
+    /**
+     * The books from one load. Snapshots with a higher sequence number were loaded later, and replace the ones before them.
+     */
+    public record Snapshot(int sequence, Map<ResourceLocation, BookDocument> books)
+    {
+    }
+}
@@ -3,6 +3,7 @@ package dev.gigaherz.guidebook.guidebook;
 import com.mojang.blaze3d.vertex.PoseStack;
 import dev.gigaherz.guidebook.guidebook.book.BookDocument;
 import dev.gigaherz.guidebook.guidebook.book.SectionRef;
+import dev.gigaherz.guidebook.guidebook.client.LineBreaker;
 import dev.gigaherz.guidebook.guidebook.drawing.VisualElement;
 import dev.gigaherz.guidebook.guidebook.elements.Element;
 import dev.gigaherz.guidebook.guidebook.util.Size;
@@ -66,6 +67,14 @@ public interface IBookGraphics
 
     List<VisualElement> measure(FormattedText text, int width, int firstLineWidth, float scale, Element.Position position, float baseline, Element.VerticalAlignment verticalAlignment);
 
+    /**
+     * Does the part of measuring text that doesn't depend on the width, so it can be kept and laid out again at other widths
+     * for as long as {@link LineBreaker.ShapedText#isCurrent} says.
+     */
+    LineBreaker.ShapedText shape(FormattedText text);
+
+    List<VisualElement> measure(LineBreaker.ShapedText text, int width, int firstLineWidth, float scale, Element.Position position, float baseline, Element.VerticalAlignment verticalAlignment);
+
     int getActualBookHeight();
 
     int getActualBookWidth();
@@ -0,0 +1,171 @@
+package dev.gigaherz.guidebook.guidebook.book;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import dev.gigaherz.guidebook.GuidebookMod;
+import dev.gigaherz.guidebook.guidebook.util.Color;
+import net.minecraft.resources.ResourceLocation;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The attributes a parseable type understands, and how to apply each of them.
+ * Binding walks the attributes actually present on the node once, so the cost depends on how many attributes are written,
+ * not on how many the type supports. Values that can't be parsed leave the target unchanged,
+ * same as the {@link IParseable#getAttribute} helpers.
+ */
+public class AttributeSchema<T>
+{
+    private final ImmutableMap<String, Binding<T>> bindings;
+
+    private AttributeSchema(Map<String, Binding<T>> bindings)
+    {
+        this.bindings = ImmutableMap.copyOf(bindings);
+    }
+
+    public void bind(@Nullable ParsingContext context, T target, NamedNodeMap attributes)
+    {
+        for (int i = 0; i < attributes.getLength(); i++)
+        {
+            Node attr = attributes.item(i);
+            Binding<T> binding = bindings.get(attr.getNodeName());
+            if (binding != null)
+            {
+                binding.bind(context, target, attr.getTextContent());
+            }
+        }
+    }
+
+    public static <T> Builder<T> builder()
+    {
+        return new Builder<>();
+    }
+
+    /**
+     * Starts a schema with all the attributes of the parent type. Attributes declared again replace the parent's.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Builder<T> builder(AttributeSchema<? super T> parent)
+    {
+        Builder<T> builder = new Builder<>();
+        // A binding that accepts any supertype of T also accepts T.
+        parent.bindings.forEach((name, binding) -> builder.bindings.put(name, (Binding<T>) (Binding<?>) binding));
+        return builder;
+    }
+
+    @FunctionalInterface
+    public interface Binding<T>
+    {
+        void bind(@Nullable ParsingContext context, T target, String value);
+    }
+
+    @FunctionalInterface
+    public interface FloatSetter<T>
+    {
+        void set(T target, float value);
+    }
+
+    @FunctionalInterface
+    public interface BooleanSetter<T>
+    {
+        void set(T target, boolean value);
+    }
+
+    public static class Builder<T>
+    {
+        private final Map<String, Binding<T>> bindings = Maps.newHashMap();
+
+        private Builder()
+        {
+        }
+
+        public Builder<T> attribute(String name, Binding<T> binding)
+        {
+            bindings.put(name, binding);
+            return this;
+        }
+
+        public Builder<T> stringAttribute(String name, BiConsumer<T, String> setter)
+        {
+            return attribute(name, (context, target, value) -> setter.accept(target, value));
+        }
+
+        public Builder<T> intAttribute(String name, ObjIntConsumer<T> setter)
+        {
+            return attribute(name, (context, target, value) -> {
+                try
+                {
+                    setter.accept(target, Integer.parseInt(value));
+                }
+                catch (NumberFormatException e)
+                {
+                    // ignored
+                }
+            });
+        }
+
+        public Builder<T> floatAttribute(String name, FloatSetter<T> setter)
+        {
+            return attribute(name, (context, target, value) -> {
+                try
+                {
+                    setter.set(target, Float.parseFloat(value));
+                }
+                catch (NumberFormatException e)
+                {
+                    // ignored
+                }
+            });
+        }
+
+        /**
+         * An attribute with no value counts as true.
+         */
+        public Builder<T> booleanAttribute(String name, BooleanSetter<T> setter)
+        {
+            return attribute(name, (context, target, value) -> setter.set(target, value.isEmpty() || Boolean.parseBoolean(value)));
+        }
+
+        public Builder<T> resourceLocationAttribute(String name, BiConsumer<T, ResourceLocation> setter)
+        {
+            return attribute(name, (context, target, value) -> setter.accept(target, new ResourceLocation(value)));
+        }
+
+        public <E extends Enum<E>> Builder<T> enumAttribute(String name, Class<E> enumClass, BiConsumer<T, E> setter)
+        {
+            return attribute(name, (context, target, value) -> {
+                try
+                {
+                    setter.accept(target, Enum.valueOf(enumClass, value.toUpperCase()));
+                }
+                catch (IllegalArgumentException ignored)
+                {
+                }
+            });
+        }
+
+        public Builder<T> colorAttribute(String name, BiConsumer<T, Color> setter)
+        {
+            return attribute(name, (context, target, value) -> {
+                try
+                {
+                    setter.accept(target, Color.parse(value));
+                }
+                catch (Color.ColorParseException e)
+                {
+                    GuidebookMod.logger.warn("Color value not valid {}", e.getColorString(), e);
+                }
+            });
+        }
+
+        public AttributeSchema<T> build()
+        {
+            return new AttributeSchema<>(bindings);
+        }
+    }
+}
@@ -0,0 +1,615 @@
+package dev.gigaherz.guidebook.guidebook.book;
+
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import dev.gigaherz.guidebook.GuidebookMod;
+import dev.gigaherz.guidebook.guidebook.BookRegistry;
+import dev.gigaherz.guidebook.guidebook.conditions.ConditionContext;
+import dev.gigaherz.guidebook.guidebook.conditions.ConditionManager;
+import dev.gigaherz.guidebook.guidebook.elements.*;
+import net.minecraft.client.resources.model.ModelResourceLocation;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraftforge.fml.ModList;
+import net.minecraftforge.registries.ForgeRegistries;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import javax.annotation.Nullable;
+import javax.xml.parsers.DocumentBuilder;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Compiled, binary form of parsed books, stored in config/books/.cache so that unchanged books don't need to be parsed from XML on every launch.
+ * Cache files are keyed by the content hash of the book and the mod version, and the hashes of every include are checked before a cached book is used.
+ * <p>
+ * Books that contain elements of an unregistered type, or that were touched by custom document-level parsers or element modifiers, are never cached.
+ * Templates are cached already expanded, and named conditions are stored as their XML source and parsed again on load.
+ */
+@SuppressWarnings("UnstableApiUsage")
+public class BookCache
+{
+    private static final int MAGIC = 0x47424B43; // GBKC
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int PAGE = 0;
+    private static final int PAGE_GROUP = 1;
+
+    private static final Map<String, Supplier<? extends Element>> elementFactories = Maps.newHashMap();
+    private static final Map<Class<? extends Element>, String> elementIds = Maps.newHashMap();
+
+    @Nullable
+    private static String environmentKey;
+
+    static
+    {
+        registerElement("paragraph", ElementParagraph.class, ElementParagraph::new);
+        registerElement("title", ElementTitle.class, ElementTitle::new);
+        registerElement("panel", ElementPanel.class, ElementPanel::new);
+        registerElement("grid", ElementGrid.class, ElementGrid::new);
+        registerElement("recipe", ElementRecipe.class, ElementRecipe::new);
+        registerElement("break", ElementBreak.class, ElementBreak::new);
+        registerElement("span", ElementSpan.class, () -> new ElementSpan(false, false));
+        registerElement("link", ElementLink.class, () -> new ElementLink(false, false));
+        registerElement("text", ElementText.class, () -> new ElementText("", false, false, TextStyle.DEFAULT));
+        registerElement("translation", ElementTranslation.class, () -> new ElementTranslation("", false, false, TextStyle.DEFAULT));
+        registerElement("stack", ElementStack.class, () -> new ElementStack(false, false));
+        registerElement("image", ElementImage.class, () -> new ElementImage(false, false));
+    }
+
+    /**
+     * Allows books containing a custom element type to be cached.
+     * The element must implement {@link Element#writeCache(Output)} and {@link Element#readCache(Input)} for all of its state.
+     */
+    public static <T extends Element> void registerElement(String id, Class<T> type, Supplier<T> factory)
+    {
+        if (elementFactories.containsKey(id))
+        {
+            throw new IllegalArgumentException("Can not register two cached element types with the same id.");
+        }
+
+        elementFactories.put(id, factory);
+        elementIds.put(type, id);
+    }
+
+    /**
+     * Fills the document with its cached contents.
+     *
+     * @param document       the book being loaded
+     * @param rootHash       the hash of the book's root document as it is now
+     * @param currentInclude computes the hash of an include as it is now
+     * @return false if there is no valid cache for these sources, in which case the document is left empty
+     */
+    public static boolean load(BookDocument document, HashCode rootHash, Function<ResourceLocation, HashCode> currentInclude)
+    {
+        ResourceLocation location = document.getLocation();
+        File file = getCacheFile(location, rootHash);
+        if (file == null || !file.isFile())
+            return false;
+
+        try (Input in = new Input(new BufferedInputStream(new FileInputStream(file))))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+                return false;
+            if (!getEnvironmentKey().equals(in.readUTF()) || !location.toString().equals(in.readUTF()))
+                return false;
+
+            BookDependencies dependencies = BookDependencies.read(in);
+            if (!dependencies.isUpToDate(rootHash, currentInclude))
+                return false;
+
+            in.readDocument(document);
+            document.getDependencies().addAll(dependencies);
+            return true;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            GuidebookMod.logger.warn("Could not read the cached copy of book {}, it will be parsed again", location, e);
+            document.resetContent();
+            return false;
+        }
+    }
+
+    /**
+     * Writes the book to the cache, replacing any older copy. Books that can't be cached are skipped.
+     */
+    public static void store(BookDocument document)
+    {
+        HashCode rootHash = document.getDependencies().getRoot();
+        if (!document.isCacheable() || rootHash == null)
+            return;
+
+        File file = getCacheFile(document.getLocation(), rootHash);
+        if (file == null)
+            return;
+
+        File temp = new File(file.getPath() + ".tmp");
+        try
+        {
+            try (Output out = new Output(new BufferedOutputStream(new FileOutputStream(temp))))
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(getEnvironmentKey());
+                out.writeUTF(document.getLocation().toString());
+                document.getDependencies().write(out);
+                out.writeDocument(document);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            deleteStaleFiles(file);
+        }
+        catch (UncacheableException e)
+        {
+            GuidebookMod.logger.debug("Book {} can't be cached: {}", document.getLocation(), e.getMessage());
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        }
+        catch (IOException e)
+        {
+            GuidebookMod.logger.warn("Could not write the cached copy of book {}", document.getLocation(), e);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        }
+    }
+
+    @Nullable
+    private static File getCacheFile(ResourceLocation location, HashCode rootHash)
+    {
+        File booksFolder = BookRegistry.getBooksFolder();
+        if (booksFolder == null)
+            return null;
+
+        File cacheFolder = new File(booksFolder, ".cache");
+        if (!cacheFolder.isDirectory() && !cacheFolder.mkdirs())
+            return null;
+
+        String prefix = Hashing.sha256().hashString(location.toString(), StandardCharsets.UTF_8).toString().substring(0, 16);
+        String key = Hashing.sha256().newHasher()
+                .putBytes(rootHash.asBytes())
+                .putString(getEnvironmentKey(), StandardCharsets.UTF_8)
+                .hash().toString().substring(0, 32);
+        return new File(cacheFolder, prefix + "-" + key + ".bin");
+    }
+
+    /**
+     * Removes the files cached for older versions of the same book.
+     */
+    private static void deleteStaleFiles(File current)
+    {
+        String name = current.getName();
+        String prefix = name.substring(0, name.indexOf('-') + 1);
+        File[] siblings = current.getParentFile().listFiles((dir, n) -> n.startsWith(prefix) && !n.equals(name));
+        if (siblings == null)
+            return;
+
+        for (File sibling : siblings)
+        {
+            //noinspection ResultOfMethodCallIgnored
+            sibling.delete();
+        }
+    }
+
+    /**
+     * Cached books hold item references, so they are only valid for the exact same set of mods they were written with.
+     */
+    private static synchronized String getEnvironmentKey()
+    {
+        if (environmentKey == null)
+        {
+            ModList modList = ModList.get();
+            Hasher hasher = Hashing.sha256().newHasher();
+            modList.getMods().stream()
+                    .map(mod -> mod.getModId() + "@" + mod.getVersion())
+                    .sorted()
+                    .forEach(mod -> hasher.putString(mod, StandardCharsets.UTF_8));
+            String version = modList.getModContainerById(GuidebookMod.MODID)
+                    .map(container -> container.getModInfo().getVersion().toString())
+                    .orElse("unknown");
+            environmentKey = version + "/" + hasher.hash();
+        }
+        return environmentKey;
+    }
+
+    /**
+     * Thrown while writing a book that contains something the cache can't represent.
+     */
+    public static class UncacheableException extends IOException
+    {
+        public UncacheableException(String message)
+        {
+            super(message);
+        }
+    }
+
+    public static class Output extends DataOutputStream
+    {
+        private final Map<Predicate<ConditionContext>, String> conditionNames = new IdentityHashMap<>();
+
+        private Output(OutputStream out)
+        {
+            super(out);
+        }
+
+        private void writeDocument(BookDocument document) throws IOException
+        {
+            writeNullableString(document.bookName);
+            writeResourceLocation(document.bookCover);
+            writeBoolean(document.bookModel instanceof ModelResourceLocation);
+            writeResourceLocation(document.bookModel);
+            writeResourceLocation(document.background);
+            writeResourceLocation(document.widgets);
+            writeFloat(document.fontSize);
+            writeSectionRef(document.home);
+
+            writeInt(document.conditions.size());
+            for (Map.Entry<String, Predicate<ConditionContext>> entry : document.conditions.entrySet())
+            {
+                String source = document.conditionSources.get(entry.getKey());
+                if (source == null)
+                    throw new UncacheableException("Condition " + entry.getKey() + " has no known source");
+                writeUTF(entry.getKey());
+                writeUTF(source);
+                conditionNames.put(entry.getValue(), entry.getKey());
+            }
+
+            writeInt(document.stackLinks.size());
+            for (Map.Entry<Item, SectionRef> entry : document.stackLinks.entrySet())
+            {
+                writeResourceLocation(ForgeRegistries.ITEMS.getKey(entry.getKey()));
+                writeSectionRef(entry.getValue());
+            }
+
+            writeInt(document.chaptersByName.size());
+            for (Map.Entry<String, Integer> entry : document.chaptersByName.entrySet())
+            {
+                writeUTF(entry.getKey());
+                writeInt(entry.getValue());
+            }
+
+            writeInt(document.sectionsByName.size());
+            for (Map.Entry<String, SectionRef> entry : document.sectionsByName.entrySet())
+            {
+                writeUTF(entry.getKey());
+                writeSectionRef(entry.getValue());
+            }
+
+            writeInt(document.chapters.size());
+            for (ChapterData chapter : document.chapters)
+            {
+                writeChapter(chapter);
+            }
+        }
+
+        private void writeChapter(ChapterData chapter) throws IOException
+        {
+            writeInt(chapter.num);
+            writeNullableString(chapter.id);
+            writeCondition(chapter.condition);
+
+            writeInt(chapter.sections.size());
+            for (PageData page : chapter.sections)
+            {
+                if (page.getClass() == PageData.class)
+                    writeByte(PAGE);
+                else if (page.getClass() == PageGroup.class)
+                    writeByte(PAGE_GROUP);
+                else
+                    throw new UncacheableException("Custom page type " + page.getClass().getName());
+
+                writeSectionRef(page.ref);
+                writeNullableString(page.id);
+                writeCondition(page.condition);
+                writeElements(page.elements);
+            }
+
+            writeInt(chapter.sectionsByName.size());
+            for (Map.Entry<String, Integer> entry : chapter.sectionsByName.entrySet())
+            {
+                writeUTF(entry.getKey());
+                writeInt(entry.getValue());
+            }
+        }
+
+        public void writeNullableString(@Nullable String value) throws IOException
+        {
+            writeBoolean(value != null);
+            if (value != null)
+                writeUTF(value);
+        }
+
+        public void writeNullableInt(@Nullable Integer value) throws IOException
+        {
+            writeBoolean(value != null);
+            if (value != null)
+                writeInt(value);
+        }
+
+        public void writeResourceLocation(@Nullable ResourceLocation value) throws IOException
+        {
+            writeNullableString(value != null ? value.toString() : null);
+        }
+
+        public void writeEnum(Enum<?> value) throws IOException
+        {
+            writeUTF(value.name());
+        }
+
+        public void writeCondition(@Nullable Predicate<ConditionContext> condition) throws IOException
+        {
+            if (condition == null)
+            {
+                writeNullableString(null);
+                return;
+            }
+
+            String name = conditionNames.get(condition);
+            if (name == null)
+                throw new UncacheableException("Element condition is not one of the book's named conditions");
+            writeNullableString(name);
+        }
+
+        public void writeSectionRef(@Nullable SectionRef ref) throws IOException
+        {
+            writeBoolean(ref != null);
+            if (ref == null)
+                return;
+
+            writeBoolean(ref.resolvedNames);
+            if (ref.resolvedNames)
+            {
+                writeInt(ref.chapter);
+                writeInt(ref.section);
+            }
+            else
+            {
+                writeNullableString(ref.chapterName);
+                writeNullableString(ref.sectionName);
+            }
+        }
+
+        public void writeItemStack(ItemStack stack) throws IOException
+        {
+            NbtIo.write(stack.save(new CompoundTag()), this);
+        }
+
+        public void writeElement(@Nullable Element element) throws IOException
+        {
+            if (element == null)
+            {
+                writeNullableString(null);
+                return;
+            }
+
+            String id = elementIds.get(element.getClass());
+            if (id == null)
+                throw new UncacheableException("Unregistered element type " + element.getClass().getName());
+
+            writeNullableString(id);
+            element.writeCache(this);
+        }
+
+        public void writeElements(List<? extends Element> elements) throws IOException
+        {
+            writeInt(elements.size());
+            for (Element element : elements)
+            {
+                writeElement(element);
+            }
+        }
+    }
+
+    public static class Input extends DataInputStream
+    {
+        private BookDocument document;
+
+        private Input(InputStream in)
+        {
+            super(in);
+        }
+
+        private void readDocument(BookDocument document) throws IOException
+        {
+            this.document = document;
+
+            document.bookName = readNullableString();
+            document.bookCover = readResourceLocation();
+            boolean modelLocation = readBoolean();
+            String model = readNullableString();
+            if (model != null)
+                document.bookModel = modelLocation ? new ModelResourceLocation(model) : new ResourceLocation(model);
+            document.background = readResourceLocation();
+            document.widgets = readResourceLocation();
+            document.fontSize = readFloat();
+            document.home = readSectionRef();
+
+            int conditions = readInt();
+            if (conditions > 0)
+            {
+                try (XmlParsers.PooledDocumentBuilder builder = XmlParsers.borrowDocumentBuilder())
+                {
+                    for (int i = 0; i < conditions; i++)
+                    {
+                        String name = readUTF();
+                        String source = readUTF();
+                        document.defineCondition(name, parseCondition(builder.builder(), source));
+                        document.conditionSources.put(name, source);
+                    }
+                }
+            }
+
+            int stackLinks = readInt();
+            for (int i = 0; i < stackLinks; i++)
+            {
+                ResourceLocation item = readResourceLocation();
+                SectionRef ref = readSectionRef();
+                // Items that stopped existing are skipped, same as the parser does.
+                if (item != null && ForgeRegistries.ITEMS.containsKey(item))
+                    document.stackLinks.put(ForgeRegistries.ITEMS.getValue(item), ref);
+            }
+
+            int chaptersByName = readInt();
+            for (int i = 0; i < chaptersByName; i++)
+            {
+                document.chaptersByName.put(readUTF(), readInt());
+            }
+
+            int sectionsByName = readInt();
+            for (int i = 0; i < sectionsByName; i++)
+            {
+                document.sectionsByName.put(readUTF(), readSectionRef());
+            }
+
+            int chapters = readInt();
+            for (int i = 0; i < chapters; i++)
+            {
+                document.chapters.add(readChapter());
+            }
+        }
+
+        private ChapterData readChapter() throws IOException
+        {
+            ChapterData chapter = new ChapterData(readInt());
+            chapter.id = readNullableString();
+            chapter.condition = readCondition();
+
+            int sections = readInt();
+            for (int i = 0; i < sections; i++)
+            {
+                int type = readByte();
+                SectionRef ref = readSectionRef();
+                PageData page = switch (type)
+                {
+                    case PAGE -> new PageData(ref);
+                    case PAGE_GROUP -> new PageGroup(ref);
+                    default -> throw new IOException("Unknown page type " + type);
+                };
+                page.id = readNullableString();
+                page.condition = readCondition();
+                readElements(page.elements, Element.class);
+                chapter.sections.add(page);
+            }
+
+            int sectionsByName = readInt();
+            for (int i = 0; i < sectionsByName; i++)
+            {
+                chapter.sectionsByName.put(readUTF(), readInt());
+            }
+
+            return chapter;
+        }
+
+        private static Predicate<ConditionContext> parseCondition(DocumentBuilder builder, String source) throws IOException
+        {
+            try
+            {
+                Document doc = builder.parse(new InputSource(new StringReader(source)));
+                Predicate<ConditionContext> condition = ConditionManager.parseCondition(doc.getDocumentElement());
+                if (condition == null)
+                    throw new IOException("Condition not found: " + doc.getDocumentElement().getNodeName());
+                return condition;
+            }
+            catch (SAXException e)
+            {
+                throw new IOException(e);
+            }
+        }
+
+        @Nullable
+        public String readNullableString() throws IOException
+        {
+            return readBoolean() ? readUTF() : null;
+        }
+
+        @Nullable
+        public Integer readNullableInt() throws IOException
+        {
+            return readBoolean() ? readInt() : null;
+        }
+
+        @Nullable
+        public ResourceLocation readResourceLocation() throws IOException
+        {
+            String value = readNullableString();
+            return value != null ? new ResourceLocation(value) : null;
+        }
+
+        public <E extends Enum<E>> E readEnum(Class<E> type) throws IOException
+        {
+            return Enum.valueOf(type, readUTF());
+        }
+
+        @Nullable
+        public Predicate<ConditionContext> readCondition() throws IOException
+        {
+            String name = readNullableString();
+            if (name == null)
+                return null;
+
+            Predicate<ConditionContext> condition = document.getCondition(name);
+            if (condition == null)
+                throw new IOException("Unknown condition " + name);
+            return condition;
+        }
+
+        @Nullable
+        public SectionRef readSectionRef() throws IOException
+        {
+            if (!readBoolean())
+                return null;
+
+            if (readBoolean())
+                return new SectionRef(readInt(), readInt());
+
+            String chapterName = readNullableString();
+            return new SectionRef(chapterName, readNullableString());
+        }
+
+        public ItemStack readItemStack() throws IOException
+        {
+            return ItemStack.of(NbtIo.read(this));
+        }
+
+        @Nullable
+        public Element readElement() throws IOException
+        {
+            String id = readNullableString();
+            if (id == null)
+                return null;
+
+            Supplier<? extends Element> factory = elementFactories.get(id);
+            if (factory == null)
+                throw new IOException("Unknown element type " + id);
+
+            Element element = factory.get();
+            element.readCache(this);
+            return element;
+        }
+
+        public <T extends Element> void readElements(List<T> elements, Class<T> type) throws IOException
+        {
+            int count = readInt();
+            for (int i = 0; i < count; i++)
+            {
+                Element element = readElement();
+                if (!type.isInstance(element))
+                    throw new IOException("Expected an element of type " + type.getSimpleName());
+                elements.add(type.cast(element));
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package dev.gigaherz.guidebook.guidebook.book;
+
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import net.minecraft.resources.ResourceLocation;
+
+import javax.annotation.Nullable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Content hashes of every file a book was built from: the root document, and each include or template library it pulled in.
+ * Used to skip parsing books whose sources didn't change since the previous reload.
+ * Books whose body is loaded lazily only record their includes once the body is parsed, possibly while another thread is checking them.
+ */
+@SuppressWarnings("UnstableApiUsage")
+public class BookDependencies
+{
+    @Nullable
+    private HashCode root;
+    private final Map<ResourceLocation, HashCode> includes = Maps.newLinkedHashMap();
+
+    public synchronized void setRoot(HashCode hash)
+    {
+        root = hash;
+    }
+
+    @Nullable
+    public synchronized HashCode getRoot()
+    {
+        return root;
+    }
+
+    public synchronized void addInclude(ResourceLocation location, HashCode hash)
+    {
+        includes.putIfAbsent(location, hash);
+    }
+
+    public synchronized void addAll(BookDependencies other)
+    {
+        other.includes.forEach(this::addInclude);
+    }
+
+    /**
+     * @return true if any of the given files was included while building the book
+     */
+    public synchronized boolean dependsOn(Collection<ResourceLocation> locations)
+    {
+        for (ResourceLocation location : locations)
+        {
+            if (includes.containsKey(location))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param currentRoot the hash of the root document as it is now
+     * @param currentInclude computes the hash of an include as it is now, or null if it can't be read anymore
+     * @return true if the root and every include still have the same contents
+     */
+    public synchronized boolean isUpToDate(HashCode currentRoot, Function<ResourceLocation, HashCode> currentInclude)
+    {
+        if (root == null || !root.equals(currentRoot))
+            return false;
+
+        for (Map.Entry<ResourceLocation, HashCode> entry : includes.entrySet())
+        {
+            if (!entry.getValue().equals(currentInclude.apply(entry.getKey())))
+                return false;
+        }
+
+        return true;
+    }
+
+    public synchronized void write(DataOutput out) throws IOException
+    {
+        if (root == null)
+            throw new IllegalStateException("The root hash must be known before the dependencies can be stored");
+
+        writeHash(out, root);
+        out.writeInt(includes.size());
+        for (Map.Entry<ResourceLocation, HashCode> entry : includes.entrySet())
+        {
+            out.writeUTF(entry.getKey().toString());
+            writeHash(out, entry.getValue());
+        }
+    }
+
+    public static BookDependencies read(DataInput in) throws IOException
+    {
+        BookDependencies dependencies = new BookDependencies();
+        dependencies.setRoot(readHash(in));
+        int count = in.readInt();
+        for (int i = 0; i < count; i++)
+        {
+            ResourceLocation location = new ResourceLocation(in.readUTF());
+            dependencies.addInclude(location, readHash(in));
+        }
+        return dependencies;
+    }
+
+    private static void writeHash(DataOutput out, HashCode hash) throws IOException
+    {
+        byte[] bytes = hash.asBytes();
+        out.writeByte(bytes.length);
+        out.write(bytes);
+    }
+
+    private static HashCode readHash(DataInput in) throws IOException
+    {
+        byte[] bytes = new byte[in.readUnsignedByte()];
+        in.readFully(bytes);
+        return HashCode.fromBytes(bytes);
+    }
+
+    public static HashCode hash(byte[] data)
+    {
+        return Hashing.sha256().hashBytes(data);
+    }
+
+    public static HashCode hashRoot(byte[] data, boolean loadedFromConfigFolder)
+    {
+        // Where the book was loaded from changes how its includes are resolved.
+        return Hashing.sha256().newHasher().putBoolean(loadedFromConfigFolder).putBytes(data).hash();
+    }
+}
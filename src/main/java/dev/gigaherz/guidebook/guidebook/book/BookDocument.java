@@ -4,6 +4,10 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import dev.gigaherz.guidebook.guidebook.IBookGraphics;
 import dev.gigaherz.guidebook.guidebook.conditions.ConditionContext;
+import dev.gigaherz.guidebook.guidebook.conditions.ConditionManager;
+import dev.gigaherz.guidebook.guidebook.conditions.ConditionTable;
+import dev.gigaherz.guidebook.guidebook.conditions.ConditionWatcher;
+import dev.gigaherz.guidebook.guidebook.conditions.NamedCondition;
 import dev.gigaherz.guidebook.guidebook.elements.Element;
 import dev.gigaherz.guidebook.guidebook.elements.ElementParagraph;
 import dev.gigaherz.guidebook.guidebook.elements.TextStyle;
@@ -15,9 +19,14 @@ import net.minecraft.world.item.Item;
 import net.minecraft.world.item.ItemStack;
 
 import javax.annotation.Nullable;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 
 public class BookDocument
@@ -36,10 +45,36 @@ public class BookDocument
     final Map<Item, SectionRef> stackLinks = Maps.newHashMap();
 
     final Map<String, Integer> chaptersByName = Maps.newHashMap();
-    final Map<String, SectionRef> sectionsByName = Maps.newHashMap();
+    // Chapters loaded in parallel register their sections concurrently.
+    final Map<String, SectionRef> sectionsByName = Maps.newConcurrentMap();
 
     final Map<String, TemplateDefinition> templates = Maps.newHashMap();
     final Map<String, Predicate<ConditionContext>> conditions = Maps.newHashMap();
+    private int conditionCount;
+    final Map<String, String> conditionSources = Maps.newHashMap();
+
+    final List<String> brokenReferences = Lists.newArrayList();
+
+    private final BookDependencies dependencies = new BookDependencies();
+
+    // Chapters read but not parsed yet, only while the body is being parsed. See BookDocumentParser.parseChapters.
+    @Nullable
+    List<BookDocumentParser.PendingChapter> pendingChapters;
+
+    private volatile boolean cacheable = true;
+
+    private final AtomicInteger sharedElements = new AtomicInteger();
+
+    // Built on first evaluation, from whatever the content was loaded from.
+    @Nullable
+    private ConditionTable conditionTable;
+    @Nullable
+    private ConditionWatcher conditionWatcher;
+    private final BitSet changedChapters = new BitSet();
+
+    // Loads the chapters, conditions and links on first use, see ensureContentLoaded().
+    @Nullable
+    private volatile ContentLoad contentLoad;
 
     private IBookGraphics renderingManager;
 
@@ -86,6 +121,110 @@ public class BookDocument
         return widgets;
     }
 
+    /**
+     * Defers loading the body of the book until something needs it. Until then, only the attributes of the root element are available.
+     */
+    public void setContentLoader(@Nullable Runnable loader)
+    {
+        this.contentLoad = loader != null ? new ContentLoad(loader) : null;
+    }
+
+    public boolean isContentLoaded()
+    {
+        ContentLoad load = contentLoad;
+        return load == null || load.isDone();
+    }
+
+    /**
+     * Parses the body of the book, if it hasn't been parsed yet. Once it has, this is only a volatile read.
+     * If another thread is loading it, waits for that thread instead of loading it again.
+     */
+    public void ensureContentLoaded()
+    {
+        ContentLoad load = contentLoad;
+        if (load != null)
+        {
+            load.run();
+        }
+    }
+
+    /**
+     * Discards everything loaded from the body of the book.
+     */
+    void resetContent()
+    {
+        chapters.clear();
+        stackLinks.clear();
+        chaptersByName.clear();
+        sectionsByName.clear();
+        templates.clear();
+        conditions.clear();
+        conditionCount = 0;
+        conditionSources.clear();
+        brokenReferences.clear();
+        sharedElements.set(0);
+        conditionTable = null;
+        conditionWatcher = null;
+        changedChapters.clear();
+    }
+
+    void addPendingChapter(BookDocumentParser.PendingChapter chapter)
+    {
+        if (pendingChapters == null)
+            throw new IllegalStateException("Chapters can only be read while the book is being parsed");
+        pendingChapters.add(chapter);
+    }
+
+    List<BookDocumentParser.PendingChapter> takePendingChapters()
+    {
+        List<BookDocumentParser.PendingChapter> pending = pendingChapters != null ? pendingChapters : List.of();
+        pendingChapters = null;
+        return pending;
+    }
+
+    /**
+     * Records that a template instance reused an element instead of copying it.
+     */
+    public void countSharedElement()
+    {
+        sharedElements.incrementAndGet();
+    }
+
+    /**
+     * @return how many element copies template instances avoided, the last time this book was parsed
+     */
+    public int getSharedElementCount()
+    {
+        return sharedElements.get();
+    }
+
+    /**
+     * @return a description of every section reference in the book that has no valid target
+     */
+    public List<String> getBrokenReferences()
+    {
+        ensureContentLoaded();
+        return Collections.unmodifiableList(brokenReferences);
+    }
+
+    public BookDependencies getDependencies()
+    {
+        return dependencies;
+    }
+
+    /**
+     * @return false if the book contains anything the compiled book cache can't represent, so it must always be parsed from XML.
+     */
+    public boolean isCacheable()
+    {
+        return cacheable;
+    }
+
+    public void markUncacheable()
+    {
+        cacheable = false;
+    }
+
     @Nullable
     public IBookGraphics getRendering()
     {
@@ -99,12 +238,14 @@ public class BookDocument
 
     public ChapterData getChapter(int i)
     {
+        ensureContentLoaded();
         return chapters.get(i);
     }
 
     @Nullable
     public SectionRef getStackLink(ItemStack stack)
     {
+        ensureContentLoaded();
         Item item = stack.getItem();
         return stackLinks.get(item);
     }
@@ -116,14 +257,23 @@ public class BookDocument
 
     public int chapterCount()
     {
+        ensureContentLoaded();
         return chapters.size();
     }
 
+    /**
+     * Adds the textures the book needs stitched into the block atlas. This is called on every model bake, so it never loads the body of the book:
+     * the cover comes from the header, and the elements are only checked if the body was loaded already.
+     * No element needs stitched textures at the moment, images draw their texture directly.
+     */
     public void findTextures(Set<Material> textures)
     {
         if (bookCover != null)
             textures.add(new Material(InventoryMenu.BLOCK_ATLAS, bookCover));
 
+        if (!isContentLoaded())
+            return;
+
         for (ChapterData chapter : chapters)
         {
             for (PageData page : chapter.sections)
@@ -138,6 +288,8 @@ public class BookDocument
 
     public void initializeWithLoadError(String error)
     {
+        cacheable = false;
+
         ChapterData ch = new ChapterData(0);
         chapters.add(ch);
 
@@ -150,17 +302,142 @@ public class BookDocument
 
     public Predicate<ConditionContext> getCondition(String name)
     {
+        ensureContentLoaded();
         return conditions.get(name);
     }
 
+    /**
+     * Adds a named condition to the book. Elements get the condition through {@link #getCondition}, which returns a handle
+     * that is only tested once per {@link #reevaluateConditions} pass, however many elements use it.
+     * Parts of the definition that can't change during the session are folded into constants here.
+     */
+    void defineCondition(String name, Predicate<ConditionContext> definition)
+    {
+        conditions.put(name, new NamedCondition(name, conditionCount++, ConditionManager.fold(definition, conditions::get)));
+    }
+
+    /**
+     * Updates the condition results of the chapters that depend on state that changed since the last call, see {@link ConditionWatcher}.
+     *
+     * @return true if any result changed, in which case {@link #getChangedChapters()} tells which chapters changed
+     */
     public boolean reevaluateConditions(ConditionContext ctx)
     {
-        boolean anyChanged = false;
-        for (ChapterData chapter : chapters)
+        ensureContentLoaded();
+        ctx.setBook(this);
+
+        if (conditionTable == null)
         {
-            anyChanged |= chapter.reevaluateConditions(ctx);
+            conditionTable = createConditionTable();
+            conditionWatcher = createConditionWatcher(conditionTable);
         }
 
-        return anyChanged;
+        changedChapters.clear();
+        BitSet dirty = conditionWatcher.findChangedChapters(ctx, chapters.size());
+        changedChapters.or(conditionTable.evaluate(ctx, dirty));
+
+        return !changedChapters.isEmpty();
+    }
+
+    /**
+     * @return the result of the condition with the given index as of the last call to {@link #reevaluateConditions},
+     * or true if the index is -1, which means there is no condition
+     */
+    public boolean isConditionMet(int conditionIndex)
+    {
+        ConditionTable table = conditionTable;
+        return table == null ? conditionIndex < 0 : table.test(conditionIndex);
+    }
+
+    /**
+     * @return the chapters with condition results that changed in the last call to {@link #reevaluateConditions}
+     */
+    public BitSet getChangedChapters()
+    {
+        return (BitSet) changedChapters.clone();
+    }
+
+    /**
+     * @return a snapshot of the state that decides the condition results in a chapter, so that two evaluations with equal snapshots
+     * give the chapter the same results, or null if the chapter uses conditions that can't be tracked
+     */
+    @Nullable
+    public BitSet getChapterConditionState(int chapter)
+    {
+        return conditionWatcher != null ? conditionWatcher.getChapterState(chapter) : null;
+    }
+
+    private ConditionTable createConditionTable()
+    {
+        ConditionTable table = new ConditionTable();
+        for (int i = 0; i < chapters.size(); i++)
+        {
+            chapters.get(i).indexConditions(table, i);
+        }
+        return table;
+    }
+
+    private ConditionWatcher createConditionWatcher(ConditionTable table)
+    {
+        ConditionWatcher watcher = new ConditionWatcher(conditions::get);
+        for (int i = 0; i < chapters.size(); i++)
+        {
+            BitSet used = table.getChapterConditions(i);
+            for (int j = used.nextSetBit(0); j >= 0; j = used.nextSetBit(j + 1))
+            {
+                watcher.addCondition(i, table.get(j));
+            }
+        }
+        return watcher;
+    }
+
+    /**
+     * Runs the content loader once. The thread running it can call back into the document without waiting for itself,
+     * which the parser does, and any other thread waits for it to finish.
+     */
+    private static class ContentLoad
+    {
+        @Nullable
+        private Runnable loader;
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        @Nullable
+        private volatile Thread loadingThread;
+
+        ContentLoad(Runnable loader)
+        {
+            this.loader = loader;
+        }
+
+        boolean isDone()
+        {
+            return done.isDone();
+        }
+
+        void run()
+        {
+            if (done.isDone() || loadingThread == Thread.currentThread())
+                return;
+
+            if (started.compareAndSet(false, true))
+            {
+                loadingThread = Thread.currentThread();
+                try
+                {
+                    loader.run();
+                }
+                finally
+                {
+                    // Dropped once it ran, so that whatever it references can be collected.
+                    loader = null;
+                    loadingThread = null;
+                    done.complete(null);
+                }
+            }
+            else
+            {
+                done.join();
+            }
+        }
     }
 }
@@ -1,9 +1,12 @@
 package dev.gigaherz.guidebook.guidebook.book;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.primitives.Floats;
+import dev.gigaherz.guidebook.ConfigValues;
 import dev.gigaherz.guidebook.GuidebookMod;
 import dev.gigaherz.guidebook.guidebook.BookParsingException;
 import dev.gigaherz.guidebook.guidebook.BookRegistry;
@@ -19,7 +22,6 @@ import net.minecraft.resources.ResourceLocation;
 import net.minecraft.world.item.Item;
 import net.minecraftforge.fml.ModList;
 import net.minecraftforge.registries.ForgeRegistries;
-import org.jetbrains.annotations.NotNull;
 import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
@@ -30,29 +32,47 @@ import javax.annotation.Nullable;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringWriter;
 import java.io.UncheckedIOException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 public class BookDocumentParser
 {
     private static final float DEFAULT_FONT_SIZE = 1.0f;
 
+    @Nullable
+    private static ForkJoinPool chapterPool;
+
     private static final Map<ResourceLocation, DocumentLevelElementParser> documentLevelElements = Maps.newHashMap();
     private static final Map<ResourceLocation, InlineElementFactory> inlineElements = Maps.newHashMap();
     private static final Map<ResourceLocation, ElementFactory> elements = Maps.newHashMap();
     private static final Map<ResourceLocation, PageFactory> pages = Maps.newHashMap();
     private static final Map<ResourceLocation, ElementModifier> modifiers = Maps.newHashMap();
-    private static final Map<ResourceLocation, Document> includeCache = Maps.newHashMap();
+    // Parsing only reads this immutable snapshot of the registries. Registering anything drops it, and it's built again on next use.
+    @Nullable
+    private static volatile TagTable tagTable;
 
     static {
         registerDefaultPage("page", PageData::new);
@@ -75,10 +95,10 @@ public class BookDocumentParser
         registerDefaultDocumentLevelElement("template", (context, chapterNumber, node) -> parseTemplateDefinition(context, node, context.document().templates));
         registerDefaultDocumentLevelElement("stack-links", (context, chapterNumber, node) -> parseStackLinks(context, node));
         registerDefaultDocumentLevelElement("conditions", (context, chapterNumber, node) -> parseConditions(context, node));
-        registerDefaultDocumentLevelElement("chapter", (context, chapterNumber, node) -> parseChapter(context, chapterNumber.getAndIncrement(), node));
+        registerDefaultDocumentLevelElement("chapter", (context, chapterNumber, node) -> readChapter(context, chapterNumber.getAndIncrement(), node));
     }
 
-    public static void registerCustomElement(ResourceLocation location, ElementFactory factory)
+    public static synchronized void registerCustomElement(ResourceLocation location, ElementFactory factory)
     {
         if (elements.containsKey(location))
         {
@@ -86,9 +106,10 @@ public class BookDocumentParser
         }
 
         elements.put(location, factory);
+        tagTable = null;
     }
 
-    public static void registerCustomInlineElement(ResourceLocation location, InlineElementFactory factory)
+    public static synchronized void registerCustomInlineElement(ResourceLocation location, InlineElementFactory factory)
     {
         if (inlineElements.containsKey(location))
         {
@@ -96,9 +117,10 @@ public class BookDocumentParser
         }
 
         inlineElements.put(location, factory);
+        tagTable = null;
     }
 
-    public static void registerCustomPage(ResourceLocation location, PageFactory factory)
+    public static synchronized void registerCustomPage(ResourceLocation location, PageFactory factory)
     {
         if (pages.containsKey(location))
         {
@@ -106,19 +128,25 @@ public class BookDocumentParser
         }
 
         pages.put(location, factory);
+        tagTable = null;
     }
 
-    public static void registerCustomDocumentLevelElement(ResourceLocation location, DocumentLevelElementParser parser)
+    public static synchronized void registerCustomDocumentLevelElement(ResourceLocation location, DocumentLevelElementParser parser)
     {
         if (documentLevelElements.containsKey(location))
         {
             throw new IllegalArgumentException("Can not register two document level element parser with the same id.");
         }
 
-        documentLevelElements.put(location, parser);
+        // The compiled book cache has no way to replay what a custom parser did to the document.
+        documentLevelElements.put(location, (context, chapterNumber, node) -> {
+            context.document().markUncacheable();
+            parser.parse(context, chapterNumber, node);
+        });
+        tagTable = null;
     }
 
-    public static void registerCustomDocumentLevelElement(ResourceLocation location, ElementModifier modifier)
+    public static synchronized void registerCustomDocumentLevelElement(ResourceLocation location, ElementModifier modifier)
     {
         if (modifiers.containsKey(location))
         {
@@ -126,18 +154,45 @@ public class BookDocumentParser
         }
 
         modifiers.put(location, modifier);
+        tagTable = null;
+    }
+
+    private static TagTable tags()
+    {
+        TagTable table = tagTable;
+        if (table == null)
+        {
+            synchronized (BookDocumentParser.class)
+            {
+                table = tagTable;
+                if (table == null)
+                {
+                    tagTable = table = TagTable.build();
+                }
+            }
+        }
+        return table;
     }
 
     public static void invalidateIncludeCache()
     {
-        includeCache.clear();
+        IncludeCache.invalidate();
+    }
+
+    /**
+     * @deprecated Use {@link XmlParsers#borrowDocumentBuilder()}, which reuses the parser instead of configuring a new one every time.
+     */
+    @Deprecated
+    public static DocumentBuilderFactory newDocumentBuilderFactory() throws ParserConfigurationException
+    {
+        return XmlParsers.newDocumentBuilderFactory();
     }
 
     @SuppressWarnings({"BooleanMethodIsAlwaysInverted", "UnstableApiUsage"})
     @Nullable
     public static BookDocument parseBook(BookDocument document, InputStream stream, boolean loadedFromConfigFolder)
     {
-        try
+        try (XmlParsers.PooledDocumentBuilder pooledBuilder = XmlParsers.borrowDocumentBuilder())
         {
             document.chapters.clear();
             document.bookName = "";
@@ -145,9 +200,7 @@ public class BookDocumentParser
             document.fontSize = DEFAULT_FONT_SIZE;
             document.chaptersByName.clear();
 
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(stream);
+            DocumentBuilder dBuilder = pooledBuilder.builder();
 
             var parsingContext = new ParsingContext()
             {
@@ -170,6 +223,23 @@ public class BookDocumentParser
                 }
             };
 
+            // Chapters are only read in the first pass, and parsed once every template and condition in the book is known.
+            document.pendingChapters = Lists.newArrayList();
+
+            if (ConfigValues.streamingBookParser)
+            {
+                if (!parseBookStreaming(parsingContext, dBuilder.newDocument(), stream))
+                {
+                    return null;
+                }
+                parseChapters(parsingContext, document.takePendingChapters());
+                pruneStaticConditions(document);
+                resolveReferences(document);
+                return document;
+            }
+
+            Document doc = dBuilder.parse(stream);
+
             doc.getDocumentElement().normalize();
 
             Node root = doc.getChildNodes().item(0);
@@ -177,72 +247,378 @@ public class BookDocumentParser
             if (root.hasAttributes())
             {
                 NamedNodeMap attributes = root.getAttributes();
-                Node n = attributes.getNamedItem("title");
-                if (n != null)
+                if (!parseRootAttributes(document, name -> {
+                    Node n = attributes.getNamedItem(name);
+                    return n != null ? n.getTextContent() : null;
+                }))
                 {
-                    document.bookName = n.getTextContent();
+                    return null;
                 }
-                n = attributes.getNamedItem("cover");
-                if (n != null)
+            }
+
+            parseDocumentLevelElements(parsingContext, root.getChildNodes());
+            parseChapters(parsingContext, document.takePendingChapters());
+            pruneStaticConditions(document);
+            resolveReferences(document);
+        }
+        catch (IOException | SAXException | XMLStreamException e)
+        {
+            document.initializeWithLoadError(e.toString());
+        }
+        finally
+        {
+            document.pendingChapters = null;
+        }
+        return document;
+    }
+
+    /**
+     * Drops everything in the book that a condition folded to false hides, and the conditions that were folded to true.
+     * Chapters and sections are only emptied, since links and the chapter list refer to them by number.
+     */
+    private static void pruneStaticConditions(BookDocument document)
+    {
+        for (ChapterData chapter : document.chapters)
+        {
+            boolean chapterHidden = ConditionManager.isAlwaysFalse(chapter.condition);
+            if (ConditionManager.isAlwaysTrue(chapter.condition))
+            {
+                chapter.condition = null;
+            }
+
+            for (PageData page : chapter.sections)
+            {
+                if (chapterHidden || ConditionManager.isAlwaysFalse(page.condition))
                 {
-                    document.bookCover = new ResourceLocation(n.getTextContent());
+                    page.elements.clear();
+                    continue;
                 }
-                n = attributes.getNamedItem("model");
-                if (n != null)
+                if (ConditionManager.isAlwaysTrue(page.condition))
                 {
-                    var text = n.getTextContent();
-                    if (text.contains("#"))
-                    {
-                        document.bookModel = new ModelResourceLocation(text);
-                    }
-                    else
-                    {
-                        document.bookModel = new ResourceLocation(text);
-                    }
+                    page.condition = null;
                 }
-                n = attributes.getNamedItem("background");
-                if (n != null)
+                Element.pruneStaticConditions(page.elements);
+            }
+        }
+    }
+
+    /**
+     * Resolves every section reference in the book into chapter and section numbers, so following a link doesn't need to look anything up.
+     * References without a valid target are collected into {@link BookDocument#getBrokenReferences()}, and reported once here.
+     */
+    public static void resolveReferences(BookDocument document)
+    {
+        document.brokenReferences.clear();
+
+        if (document.home != null)
+        {
+            resolveReference(document, document.home, "home");
+        }
+        for (Map.Entry<Item, SectionRef> entry : document.stackLinks.entrySet())
+        {
+            resolveReference(document, entry.getValue(), "stack link for " + ForgeRegistries.ITEMS.getKey(entry.getKey()));
+        }
+
+        List<LinkContext> links = Lists.newArrayList();
+        for (ChapterData chapter : document.chapters)
+        {
+            for (PageData page : chapter.sections)
+            {
+                for (Element element : page.elements)
                 {
-                    document.background = new ResourceLocation(n.getTextContent());
+                    element.findLinks(links);
                 }
-                n = attributes.getNamedItem("widgets");
-                if (n != null)
+            }
+        }
+        for (LinkContext link : links)
+        {
+            if (link.target != null)
+            {
+                resolveReference(document, link.target, "link");
+            }
+        }
+
+        if (!document.brokenReferences.isEmpty())
+        {
+            GuidebookMod.logger.warn("Book {} has {} broken section references:\n  {}", document.getLocation(), document.brokenReferences.size(),
+                    String.join("\n  ", document.brokenReferences));
+        }
+    }
+
+    private static void resolveReference(BookDocument document, SectionRef ref, String source)
+    {
+        String error = ref.tryResolve(document);
+        if (error != null)
+        {
+            document.brokenReferences.add(String.format("%s to \"%s\": %s", source, ref, error));
+        }
+    }
+
+    /**
+     * Parses the book from a StAX stream. Chapters are read one section at a time, and every other top level element is turned into a DOM tree
+     * of its own before being handed to its parser, so the whole document never exists as a DOM tree at once.
+     *
+     * @return false if the book depends on a mod that isn't loaded
+     */
+    private static boolean parseBookStreaming(ParsingContext context, Document owner, InputStream stream) throws XMLStreamException
+    {
+        XMLStreamReader reader = XmlParsers.streamReader(stream);
+        try
+        {
+            while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT)
+            {
+                // Skip the prolog.
+            }
+            if (reader.getEventType() != XMLStreamConstants.START_ELEMENT)
+            {
+                throw new XMLStreamException("The book has no root element");
+            }
+
+            if (!parseRootAttributes(context.document(), name -> reader.getAttributeValue(null, name)))
+            {
+                return false;
+            }
+
+            AtomicInteger chapterNumber = new AtomicInteger(0);
+            while (reader.next() != XMLStreamConstants.END_ELEMENT)
+            {
+                if (reader.getEventType() != XMLStreamConstants.START_ELEMENT)
+                    continue;
+
+                if ("chapter".equals(XmlFragmentReader.qualifiedName(reader)))
                 {
-                    document.widgets = new ResourceLocation(n.getTextContent());
+                    readChapter(context, chapterNumber.getAndIncrement(), reader);
                 }
-                n = attributes.getNamedItem("fontSize");
-                if (n != null)
+                else
                 {
-                    Float f = Floats.tryParse(n.getTextContent());
-                    document.fontSize = f != null ? f : DEFAULT_FONT_SIZE;
+                    parseDocumentLevelElement(context, chapterNumber, XmlFragmentReader.readElement(reader, owner));
                 }
-                n = attributes.getNamedItem("home");
-                if (n != null)
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return true;
+    }
+
+    /**
+     * Reads a chapter without parsing its contents, see {@link #parseChapters}. The chapter gets a document of its own,
+     * since DOM nodes that share a document can't be safely read from different threads.
+     */
+    private static void readChapter(ParsingContext context, int chapterNumber, XMLStreamReader reader) throws XMLStreamException
+    {
+        ChapterData chapter = new ChapterData(context.document().chapters.size());
+        context.document().chapters.add(chapter);
+
+        Document owner = context.xmlDocumentBuilder().newDocument();
+        Node chapterItem = XmlFragmentReader.readStartTag(reader, owner);
+        if (chapterItem.hasAttributes())
+        {
+            chapter.parse(context, chapterItem.getAttributes());
+        }
+
+        List<Node> children = Lists.newArrayList();
+        while (reader.next() != XMLStreamConstants.END_ELEMENT)
+        {
+            if (reader.getEventType() != XMLStreamConstants.START_ELEMENT)
+                continue;
+
+            children.add(XmlFragmentReader.readElement(reader, owner));
+        }
+        context.document().addPendingChapter(new PendingChapter(chapterNumber, chapter, children));
+    }
+
+    /**
+     * Parses the contents of the chapters read by {@link #readChapter}. Every book is parsed in these two passes, so templates and conditions
+     * defined anywhere in the book are visible to every chapter, whatever the config says. The config only decides whether the chapters
+     * are parsed in order on the calling thread, or all at once on {@link #chapterPool()}, which works the same from the loader threads
+     * and from the render thread opening a book for the first time.
+     */
+    private static void parseChapters(ParsingContext parent, List<PendingChapter> pendingChapters)
+    {
+        BookDocument document = parent.document();
+        ParsingContext context = new ParsingContext.Wrapper(parent)
+        {
+            // The book is still loading, BookDocument.getCondition would wait for this same load to finish.
+            @Override
+            public Predicate<ConditionContext> getCondition(String name)
+            {
+                return document.conditions.get(name);
+            }
+        };
+
+        if (!ConfigValues.parallelBookLoading || pendingChapters.size() < 2)
+        {
+            pendingChapters.forEach(pending -> parsePendingChapter(context, pending));
+        }
+        else
+        {
+            ForkJoinPool pool = chapterPool();
+            List<ForkJoinTask<?>> tasks = pendingChapters.stream()
+                    .<ForkJoinTask<?>>map(pending -> pool.submit(() -> parsePendingChapter(context, pending)))
+                    .toList();
+            // Rethrows the first failure, same as parsing them in order would.
+            tasks.forEach(ForkJoinTask::join);
+        }
+
+        // Chapters register their sections as they finish, so do it again in book order: when two sections share an id, the last one wins.
+        for (ChapterData chapter : document.chapters)
+        {
+            for (PageData page : chapter.sections)
+            {
+                if (page.id != null)
                 {
-                    String ref = n.getTextContent();
-                    document.home = SectionRef.fromString(ref);
+                    document.sectionsByName.put(page.id, page.ref);
                 }
-                n = attributes.getNamedItem("dependencies");
-                if (n != null)
+            }
+        }
+    }
+
+    private static void parsePendingChapter(ParsingContext parent, PendingChapter pending)
+    {
+        // Chapters may be parsed on other threads than the book, which can't use the book's document builder.
+        try (XmlParsers.PooledDocumentBuilder pooledBuilder = XmlParsers.borrowDocumentBuilder())
+        {
+            ParsingContext context = new ParsingContext.Wrapper(parent)
+            {
+                @Override
+                public DocumentBuilder xmlDocumentBuilder()
+                {
+                    return pooledBuilder.builder();
+                }
+            };
+
+            AtomicInteger sectionNumber = new AtomicInteger(0);
+            for (Node child : pending.children())
+            {
+                parseChapterElement(context, pending.chapterNumber(), pending.chapter(), sectionNumber, child);
+            }
+        }
+    }
+
+    /**
+     * The pool shared by every book for parsing chapters, so that parsing them never depends on which thread the book is parsed on.
+     * Created on first use, with as many threads as the book loading threads config allows at that time.
+     */
+    private static synchronized ForkJoinPool chapterPool()
+    {
+        if (chapterPool == null)
+        {
+            chapterPool = new ForkJoinPool(ConfigValues.getBookLoadingParallelism(), BookDocumentParser::newChapterThread, null, false);
+        }
+        return chapterPool;
+    }
+
+    private static ForkJoinWorkerThread newChapterThread(ForkJoinPool pool)
+    {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("Guidebook-Chapter-Parser-" + thread.getPoolIndex());
+        // The default factory gives workers the system class loader, which can't see mod classes.
+        thread.setContextClassLoader(BookDocumentParser.class.getClassLoader());
+        return thread;
+    }
+
+    record PendingChapter(int chapterNumber, ChapterData chapter, List<Node> children)
+    {
+    }
+
+    /**
+     * Reads only the attributes of the root element, without building a DOM tree. That is everything needed to show the book as an item,
+     * so the body of the book can be parsed later, when it's first opened.
+     *
+     * @return false if the book depends on a mod that isn't loaded
+     */
+    public static boolean parseHeader(BookDocument document, byte[] data)
+    {
+        document.bookName = "";
+        document.bookCover = null;
+        document.fontSize = DEFAULT_FONT_SIZE;
+
+        try
+        {
+            XMLStreamReader reader = XmlParsers.streamReader(new ByteArrayInputStream(data));
+            try
+            {
+                while (reader.hasNext())
                 {
-                    for (String s : n.getTextContent().split(","))
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT)
                     {
-                        if (!ModList.get().isLoaded(s))
-                        {
-                            document.initializeWithLoadError("Dependency not loaded: " + s);
-                            return null;
-                        }
+                        return parseRootAttributes(document, name -> reader.getAttributeValue(null, name));
                     }
                 }
             }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch (XMLStreamException e)
+        {
+            // The full parse will report the error when the book is opened.
+            GuidebookMod.logger.debug("Could not read the header of book {}", document.getLocation(), e);
+        }
+        return true;
+    }
 
-            parseDocumentLevelElements(parsingContext, root.getChildNodes());
+    private static boolean parseRootAttributes(BookDocument document, Function<String, String> attributes)
+    {
+        String value = attributes.apply("title");
+        if (value != null)
+        {
+            document.bookName = value;
         }
-        catch (IOException | ParserConfigurationException | SAXException e)
+        value = attributes.apply("cover");
+        if (value != null)
         {
-            document.initializeWithLoadError(e.toString());
+            document.bookCover = new ResourceLocation(value);
         }
-        return document;
+        value = attributes.apply("model");
+        if (value != null)
+        {
+            if (value.contains("#"))
+            {
+                document.bookModel = new ModelResourceLocation(value);
+            }
+            else
+            {
+                document.bookModel = new ResourceLocation(value);
+            }
+        }
+        value = attributes.apply("background");
+        if (value != null)
+        {
+            document.background = new ResourceLocation(value);
+        }
+        value = attributes.apply("widgets");
+        if (value != null)
+        {
+            document.widgets = new ResourceLocation(value);
+        }
+        value = attributes.apply("fontSize");
+        if (value != null)
+        {
+            Float f = Floats.tryParse(value);
+            document.fontSize = f != null ? f : DEFAULT_FONT_SIZE;
+        }
+        value = attributes.apply("home");
+        if (value != null)
+        {
+            document.home = SectionRef.fromString(value);
+        }
+        value = attributes.apply("dependencies");
+        if (value != null)
+        {
+            for (String s : value.split(","))
+            {
+                if (!ModList.get().isLoaded(s))
+                {
+                    document.initializeWithLoadError("Dependency not loaded: " + s);
+                    return false;
+                }
+            }
+        }
+        return true;
     }
 
     public static void parseTemplateDefinition(ParsingContext context, Node templateItem, Map<String, TemplateDefinition> templates)
@@ -313,7 +689,8 @@ public class BookDocumentParser
     {
         if (elementItem.getNodeType() != Node.TEXT_NODE)
         {
-            return createInlineElement(context, defaultStyle, elementItem, getNodeLoc(elementItem));
+            Tag tag = tags().get(elementItem);
+            return tag != null && tag.inlineElement() != null ? createInlineElement(context, defaultStyle, elementItem, tag.inlineElement()) : null;
         }
         String textContent = ElementText.compactString(elementItem.getTextContent(), context.isFirstElement(), context.isLastElement());
         if (!Strings.isNullOrEmpty(textContent))
@@ -352,22 +729,18 @@ public class BookDocumentParser
     private static void parseRunElement(ParsingContext context, List<ElementInline> elements, Node elementItem, TextStyle defaultStyle)
     {
         String nodeName = elementItem.getNodeName();
-        ResourceLocation nodeLoc = getNodeLoc(elementItem);
+        Tag tag = tags().get(elementItem);
 
-        if (BookDocumentParser.elements.containsKey(nodeLoc))
+        if (tag != null && tag.element() != null)
         {
-            if (createElement(context, Collections.emptyMap(), defaultStyle, elementItem, nodeLoc) instanceof ElementInline inline)
+            if (createElement(context, Collections.emptyMap(), defaultStyle, elementItem, tag.element()) instanceof ElementInline inline)
             {
                 elements.add(inline);
             }
         }
-        else if (inlineElements.containsKey(nodeLoc))
+        else if (tag != null && tag.inlineElement() != null)
         {
-            var e = createInlineElement(context, defaultStyle, elementItem, nodeLoc);
-            if (e != null)
-            {
-                elements.add(e);
-            }
+            elements.add(createInlineElement(context, defaultStyle, elementItem, tag.inlineElement()));
         }
         else
         {
@@ -401,12 +774,6 @@ public class BookDocumentParser
 
     }
 
-    @NotNull
-    private static ResourceLocation getNodeLoc(Node elementItem)
-    {
-        return elementItem.getNodeType() == Node.ELEMENT_NODE ? new ResourceLocation(elementItem.getNodeName()) : new ResourceLocation("_");
-    }
-
     private static void registerDefaultElement(String location, ElementFactory factory)
     {
         elements.put(new ResourceLocation(location), factory);
@@ -448,6 +815,9 @@ public class BookDocumentParser
                 {
                     TemplateLibrary tpl = TemplateLibrary.get(context, resLoc, includeRoot);
                     context.document().templates.putAll(tpl.templates);
+                    BookDependencies dependencies = context.dependencies();
+                    if (dependencies != null)
+                        dependencies.addAll(tpl.dependencies);
                 }
                 else
                 {
@@ -458,10 +828,10 @@ public class BookDocumentParser
         }
         if (firstLevelNode.getNodeType() != Node.ELEMENT_NODE)
             return;
-        DocumentLevelElementParser parser = documentLevelElements.get(getNodeLoc(firstLevelNode));
-        if (parser != null)
+        Tag tag = tags().get(firstLevelNode);
+        if (tag != null && tag.documentLevel() != null)
         {
-            parser.parse(context, chapterNumber, firstLevelNode);
+            tag.documentLevel().parse(context, chapterNumber, firstLevelNode);
         }
     }
 
@@ -515,11 +885,20 @@ public class BookDocumentParser
 
             Predicate<ConditionContext> displayCondition = parseSingleCondition(condition);
 
-            context.document().conditions.put(name, displayCondition);
+            context.document().defineCondition(name, displayCondition);
+
+            String source = toXmlString(condition);
+            if (source != null)
+                context.document().conditionSources.put(name, source);
+            else
+                context.document().markUncacheable();
         }
     }
 
-    private static void parseChapter(ParsingContext context, int chapterNumber, Node chapterItem)
+    /**
+     * Reads a chapter from a DOM tree, like the ones from includes or from the DOM parser, without parsing its contents. See {@link #parseChapters}.
+     */
+    private static void readChapter(ParsingContext context, int chapterNumber, Node chapterItem)
     {
         ChapterData chapter = new ChapterData(context.document().chapters.size());
         context.document().chapters.add(chapter);
@@ -529,14 +908,15 @@ public class BookDocumentParser
             chapter.parse(context, chapterItem.getAttributes());
         }
 
-        AtomicInteger sectionNumber = new AtomicInteger(0);
-        NodeList pagesList = chapterItem.getChildNodes();
+        // Copied into a document of its own, the tree it comes from may hold other chapters that are parsed at the same time.
+        Node copy = context.xmlDocumentBuilder().newDocument().importNode(chapterItem, true);
+        List<Node> children = Lists.newArrayList();
+        NodeList pagesList = copy.getChildNodes();
         for (int j = 0; j < pagesList.getLength(); j++)
         {
-            Node pageItem = pagesList.item(j);
-
-            parseChapterElement(context, chapterNumber, chapter, sectionNumber, pageItem);
+            children.add(pagesList.item(j));
         }
+        context.document().addPendingChapter(new PendingChapter(chapterNumber, chapter, children));
     }
 
     private static void parseChapterElement(ParsingContext context, int chapterNumber, ChapterData chapter, AtomicInteger sectionNumber, Node pageItem)
@@ -544,11 +924,13 @@ public class BookDocumentParser
         if ("include".equals(pageItem.getNodeName()))
         {
             parseInclude(context, pageItem, (name, doc) -> parseChapterElement(context, chapterNumber, chapter, sectionNumber, doc));
+            return;
         }
-        else if (pageItem.getNodeType() == Node.ELEMENT_NODE && pages.containsKey(getNodeLoc(pageItem)))
+
+        Tag tag = tags().get(pageItem);
+        if (tag != null && tag.page() != null)
         {
-            PageFactory factory = pages.get(getNodeLoc(pageItem));
-            PageData page = factory.newInstance(new SectionRef(chapterNumber, sectionNumber.getAndIncrement()));
+            PageData page = tag.page().newInstance(new SectionRef(chapterNumber, sectionNumber.getAndIncrement()));
             parseSection(context, chapter, pageItem, page);
         }
     }
@@ -583,57 +965,74 @@ public class BookDocumentParser
         Node n = attributes.getNamedItem("ref");
 
         ResourceLocation id = new ResourceLocation(n.getTextContent());
-        Document include = includeCache.computeIfAbsent(id, resLoc -> {
+        IncludeCache.Entry include;
+        try
+        {
+            include = IncludeCache.get(id, context.loadedFromConfigFolder());
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        catch (XMLStreamException e)
+        {
+            throw new RuntimeException(e);
+        }
 
-            // Prevents loading includes from config folder if the book was found in resource packs.
-            if (context.loadedFromConfigFolder() && resLoc.getNamespace().equals("gbook"))
-            {
-                File booksFolder = BookRegistry.getBooksFolder();
-                File file = new File(booksFolder, resLoc.getPath());
-                if (file.exists() && file.isFile())
-                {
-                    try (InputStream stream = new FileInputStream(file))
-                    {
-                        return context.xmlDocumentBuilder().parse(stream);
-                    }
-                    catch (FileNotFoundException e)
-                    {
-                        // WUT? continue and try to load from resource pack
-                    }
-                    catch (IOException e)
-                    {
-                        throw new UncheckedIOException(e);
-                    }
-                    catch (SAXException e)
-                    {
-                        throw new RuntimeException(e);
-                    }
-                }
-            }
+        BookDependencies dependencies = context.dependencies();
+        if (dependencies != null)
+        {
+            dependencies.addInclude(id, include.hash());
+        }
 
-            try
+        // Every include gets its own DOM tree, since parsing templates modifies their attributes.
+        includeAction.accept(id, include.fragment().toNode(context.xmlDocumentBuilder().newDocument()));
+    }
+
+    public static byte[] readInclude(ResourceLocation resLoc, boolean loadedFromConfigFolder) throws IOException
+    {
+        // Prevents loading includes from config folder if the book was found in resource packs.
+        if (loadedFromConfigFolder && resLoc.getNamespace().equals("gbook"))
+        {
+            File booksFolder = BookRegistry.getBooksFolder();
+            File file = new File(booksFolder, resLoc.getPath());
+            if (file.exists() && file.isFile())
             {
-                var res = Minecraft.getInstance().getResourceManager().getResourceOrThrow(resLoc);
-                try (InputStream stream = res.open())
+                try (InputStream stream = new FileInputStream(file))
                 {
-                    return context.xmlDocumentBuilder().parse(stream);
+                    return stream.readAllBytes();
                 }
-                catch (IOException e)
+                catch (FileNotFoundException e)
                 {
-                    throw new UncheckedIOException(e);
+                    // WUT? continue and try to load from resource pack
                 }
-                catch (SAXException e)
-                {
-                    throw new RuntimeException(e);
-                }
-            }
-            catch (FileNotFoundException e)
-            {
-                throw new UncheckedIOException(e);
             }
-        });
+        }
 
-        includeAction.accept(id, include.getDocumentElement());
+        var res = Minecraft.getInstance().getResourceManager().getResourceOrThrow(resLoc);
+        try (InputStream stream = res.open())
+        {
+            return stream.readAllBytes();
+        }
+    }
+
+    /**
+     * Serializes a node back to XML, so that the compiled book cache can parse the conditions again without the original document.
+     */
+    @Nullable
+    private static String toXmlString(Node node)
+    {
+        try
+        {
+            StringWriter writer = new StringWriter();
+            XmlParsers.transformer().transform(new DOMSource(node), new StreamResult(writer));
+            return writer.toString();
+        }
+        catch (TransformerException e)
+        {
+            GuidebookMod.logger.debug("Could not serialize condition node", e);
+            return null;
+        }
     }
 
     private static Predicate<ConditionContext> parseSingleCondition(Node condition)
@@ -660,8 +1059,9 @@ public class BookDocumentParser
         Element parsedElement = null;
 
         String nodeName = elementItem.getNodeName();
-        ResourceLocation nodeLoc =
-                getNodeLoc(elementItem);
+        Tag tag = tags().get(elementItem);
+        ElementFactory factory = tag != null ? tag.element() : null;
+        TemplateDefinition tDef = factory == null ? templates.get(nodeName) : null;
 
         if ("include".equals(nodeName))
         {
@@ -669,14 +1069,12 @@ public class BookDocumentParser
                     parsePageElement(context, elements, templates, generateParagraphs, defaultStyle, document)
             );
         }
-        else if (BookDocumentParser.elements.containsKey(nodeLoc))
+        else if (factory != null)
         {
-            parsedElement = createElement(context, templates, defaultStyle, elementItem, nodeLoc);
+            parsedElement = createElement(context, templates, defaultStyle, elementItem, factory);
         }
-        else if (templates.containsKey(nodeName))
+        else if (tDef != null)
         {
-            TemplateDefinition tDef = templates.get(nodeName);
-
             ElementPanel t = new ElementPanel();
             t.parse(context, tDef.attributes);
 
@@ -700,7 +1098,7 @@ public class BookDocumentParser
             if (generateParagraphs)
             {
                 String textContent = ElementText.compactString(elementItem.getTextContent(), context.isFirstElement(), context.isLastElement());
-                if (!Strings.isNullOrEmpty(textContent) && !textContent.matches("^[ \t\r\n]+$"))
+                if (!Strings.isNullOrEmpty(textContent) && !ElementText.isWhitespace(textContent))
                 {
                     parsedElement = ElementSpan.of(textContent, defaultStyle);
                 }
@@ -739,14 +1137,8 @@ public class BookDocumentParser
         }
     }
 
-    @Nullable
-    private static Element createElement(ParsingContext context, Map<String, TemplateDefinition> templates, TextStyle defaultStyle, Node elementItem, ResourceLocation nodeLoc)
+    private static Element createElement(ParsingContext context, Map<String, TemplateDefinition> templates, TextStyle defaultStyle, Node elementItem, ElementFactory factory)
     {
-        ElementFactory factory = elements.get(nodeLoc);
-        if (factory == null)
-        {
-            return null;
-        }
         Element t = factory.newInstance();
         TextStyle childStyle = t.childStyle(context, elementItem.getAttributes(), defaultStyle);
         if (elementItem.hasAttributes())
@@ -762,11 +1154,8 @@ public class BookDocumentParser
         return t;
     }
 
-    @Nullable
-    private static ElementInline createInlineElement(ParsingContext context, TextStyle defaultStyle, Node elementItem, ResourceLocation nodeLoc)
+    private static ElementInline createInlineElement(ParsingContext context, TextStyle defaultStyle, Node elementItem, InlineElementFactory factory)
     {
-        InlineElementFactory factory = inlineElements.get(nodeLoc);
-        if (factory == null) return null;
         ElementInline element = factory.newInstance(context.isFirstElement(), context.isLastElement());
         TextStyle childStyle = element.childStyle(context, elementItem.getAttributes(), defaultStyle);
         if (elementItem.hasAttributes())
@@ -784,15 +1173,71 @@ public class BookDocumentParser
 
     private static void applyModifiers(ParsingContext context, TextStyle defaultStyle, Element element, NamedNodeMap attributes)
     {
+        Map<String, ElementModifier> modifiers = tags().modifiers();
+        if (modifiers.isEmpty())
+            return;
+
         for (int i = 0; i < attributes.getLength(); i++)
         {
             Node attr = attributes.item(i);
-            ResourceLocation key = ResourceLocation.tryParse(attr.getNodeName());
-            if (key == null) continue;
-            if (!modifiers.containsKey(key)) continue;
-            ElementModifier elementModifier = modifiers.get(key);
+            ElementModifier elementModifier = modifiers.get(attr.getNodeName());
+            if (elementModifier == null) continue;
             if (!elementModifier.canModify(context, element)) continue;
+            context.document().markUncacheable();
             elementModifier.modify(context, element, attr.getNodeValue(), attributes, defaultStyle);
         }
     }
+
+    /**
+     * A frozen copy of the registries, keyed by tag and attribute names exactly as they are written in the XML,
+     * so that classifying a node takes a single lookup and doesn't need to build a ResourceLocation.
+     * Names in the minecraft namespace are reachable with or without the namespace, same as when parsing them into a ResourceLocation.
+     */
+    private record TagTable(ImmutableMap<String, Tag> tags, ImmutableMap<String, ElementModifier> modifiers)
+    {
+        @Nullable
+        Tag get(Node node)
+        {
+            return node.getNodeType() == Node.ELEMENT_NODE ? tags.get(node.getNodeName()) : null;
+        }
+
+        static TagTable build()
+        {
+            Set<ResourceLocation> locations = Sets.newHashSet();
+            locations.addAll(elements.keySet());
+            locations.addAll(inlineElements.keySet());
+            locations.addAll(pages.keySet());
+            locations.addAll(documentLevelElements.keySet());
+
+            Map<String, Tag> tags = Maps.newHashMap();
+            for (ResourceLocation location : locations)
+            {
+                Tag tag = new Tag(elements.get(location), inlineElements.get(location), pages.get(location), documentLevelElements.get(location));
+                putNames(tags, location, tag);
+            }
+
+            Map<String, ElementModifier> modifierNames = Maps.newHashMap();
+            BookDocumentParser.modifiers.forEach((location, modifier) -> putNames(modifierNames, location, modifier));
+
+            return new TagTable(ImmutableMap.copyOf(tags), ImmutableMap.copyOf(modifierNames));
+        }
+
+        private static <T> void putNames(Map<String, T> map, ResourceLocation location, T value)
+        {
+            map.put(location.toString(), value);
+            if (location.getNamespace().equals("minecraft"))
+            {
+                map.put(location.getPath(), value);
+            }
+        }
+    }
+
+    /**
+     * Everything registered for one tag name. A name can be registered as more than one kind of element,
+     * and each part of the document picks the kind that applies to it.
+     */
+    private record Tag(@Nullable ElementFactory element, @Nullable InlineElementFactory inlineElement,
+                       @Nullable PageFactory page, @Nullable DocumentLevelElementParser documentLevel)
+    {
+    }
 }
@@ -5,6 +5,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import dev.gigaherz.guidebook.guidebook.IBookGraphics;
 import dev.gigaherz.guidebook.guidebook.conditions.ConditionContext;
+import dev.gigaherz.guidebook.guidebook.conditions.ConditionTable;
 import dev.gigaherz.guidebook.guidebook.drawing.VisualChapter;
 import dev.gigaherz.guidebook.guidebook.elements.TextStyle;
 import dev.gigaherz.guidebook.guidebook.templates.TemplateDefinition;
@@ -22,7 +23,7 @@ public class ChapterData implements IParseable
     public final int num;
     public String id;
     public Predicate<ConditionContext> condition;
-    public boolean conditionResult;
+    public int conditionIndex = -1;
 
     public final List<PageData> sections = Lists.newArrayList();
     public final Map<String, Integer> sectionsByName = Maps.newHashMap();
@@ -32,25 +33,12 @@ public class ChapterData implements IParseable
         this.num = num;
     }
 
-    public boolean reevaluateConditions(ConditionContext ctx)
-    {
-        boolean oldValue = conditionResult;
-        conditionResult = condition == null || condition.test(ctx);
-
-        boolean anyChanged = conditionResult != oldValue;
-        for (PageData section : sections)
-        {
-            anyChanged |= section.reevaluateConditions(ctx);
-        }
-
-        return anyChanged;
-    }
-
     public void reflow(IBookGraphics rendering, VisualChapter ch, Size pageSize)
     {
+        BookDocument book = rendering.getBook();
         for (PageData section : sections)
         {
-            if (!section.conditionResult || section.isEmpty())
+            if (!book.isConditionMet(section.conditionIndex) || section.isEmpty(book))
             {
                 continue;
             }
@@ -64,9 +52,18 @@ public class ChapterData implements IParseable
         }
     }
 
-    public boolean isEmpty()
+    public boolean isEmpty(BookDocument book)
+    {
+        return sections.stream().noneMatch(s -> book.isConditionMet(s.conditionIndex) && !s.isEmpty(book));
+    }
+
+    public void indexConditions(ConditionTable table, int chapter)
     {
-        return sections.stream().noneMatch(s -> s.conditionResult && !s.isEmpty());
+        conditionIndex = table.add(chapter, condition);
+        for (PageData section : sections)
+        {
+            section.indexConditions(table, chapter);
+        }
     }
 
     @Override
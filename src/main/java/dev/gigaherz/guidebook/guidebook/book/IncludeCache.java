@@ -0,0 +1,160 @@
+package dev.gigaherz.guidebook.guidebook.book;
+
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import net.minecraft.resources.ResourceLocation;
+
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parsed includes, shared by every book and loader thread.
+ * Fragments are keyed by their contents, so they stay valid across reloads as long as the file doesn't change, and a file included from
+ * many books is only parsed once. The least recently used fragments are dropped past {@link #MAX_FRAGMENTS}, and the rest are held through
+ * soft references so they can be reclaimed if memory runs low.
+ */
+@SuppressWarnings("UnstableApiUsage")
+public class IncludeCache
+{
+    private static final int MAX_FRAGMENTS = 256;
+
+    // The file an include resolves to can differ depending on where the book was loaded from, so hashes are kept for each case.
+    private static final Map<Source, HashCode> hashes = Maps.newConcurrentMap();
+    private static final Map<Key, Slot> fragments = new LinkedHashMap<>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Slot> eldest)
+        {
+            if (size() > MAX_FRAGMENTS)
+            {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Forgets which contents each include had, so the files are read again the next time they are included.
+     * Parsed fragments are kept, and will be reused if the contents didn't change.
+     */
+    public static void invalidate()
+    {
+        hashes.clear();
+    }
+
+    public static void clear()
+    {
+        hashes.clear();
+        synchronized (fragments)
+        {
+            fragments.clear();
+        }
+    }
+
+    /**
+     * @return the parsed include, and the hash of the contents it was parsed from
+     */
+    public static Entry get(ResourceLocation location, boolean loadedFromConfigFolder) throws IOException, XMLStreamException
+    {
+        Source source = new Source(location, loadedFromConfigFolder);
+        byte[] data = null;
+        HashCode hash = hashes.get(source);
+        if (hash == null)
+        {
+            data = BookDocumentParser.readInclude(location, loadedFromConfigFolder);
+            hash = BookDependencies.hash(data);
+            hashes.put(source, hash);
+        }
+
+        while (true)
+        {
+            Slot slot;
+            synchronized (fragments)
+            {
+                slot = fragments.computeIfAbsent(new Key(location, hash), key -> new Slot());
+            }
+
+            // Parsing happens outside of the map lock, so that only the threads that need this same include wait for it.
+            synchronized (slot)
+            {
+                XmlFragment fragment = slot.get();
+                if (fragment != null)
+                {
+                    hits.incrementAndGet();
+                    return new Entry(fragment, hash);
+                }
+
+                if (data == null)
+                {
+                    // The fragment was reclaimed, and the file may have changed since it was hashed.
+                    data = BookDocumentParser.readInclude(location, loadedFromConfigFolder);
+                    HashCode actual = BookDependencies.hash(data);
+                    if (!actual.equals(hash))
+                    {
+                        hash = actual;
+                        hashes.put(source, hash);
+                        continue;
+                    }
+                }
+
+                misses.incrementAndGet();
+                fragment = XmlFragment.parse(data);
+                slot.reference = new SoftReference<>(fragment);
+                return new Entry(fragment, hash);
+            }
+        }
+    }
+
+    public static Stats getStats()
+    {
+        int size;
+        synchronized (fragments)
+        {
+            size = fragments.size();
+        }
+        return new Stats(hits.get(), misses.get(), evictions.get(), size);
+    }
+
+    public record Entry(XmlFragment fragment, HashCode hash)
+    {
+    }
+
+    public record Stats(long hits, long misses, long evictions, int size)
+    {
+        @Override
+        public String toString()
+        {
+            return String.format("%d hits, %d misses, %d evictions, %d fragments cached", hits, misses, evictions, size);
+        }
+    }
+
+    private record Source(ResourceLocation location, boolean loadedFromConfigFolder)
+    {
+    }
+
+    private record Key(ResourceLocation location, HashCode hash)
+    {
+    }
+
+    private static class Slot
+    {
+        @Nullable
+        SoftReference<XmlFragment> reference;
+
+        @Nullable
+        XmlFragment get()
+        {
+            return reference != null ? reference.get() : null;
+        }
+    }
+}
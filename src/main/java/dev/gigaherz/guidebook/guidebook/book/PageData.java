@@ -3,6 +3,7 @@ package dev.gigaherz.guidebook.guidebook.book;
 import com.google.common.collect.Lists;
 import dev.gigaherz.guidebook.guidebook.IBookGraphics;
 import dev.gigaherz.guidebook.guidebook.conditions.ConditionContext;
+import dev.gigaherz.guidebook.guidebook.conditions.ConditionTable;
 import dev.gigaherz.guidebook.guidebook.drawing.VisualPage;
 import dev.gigaherz.guidebook.guidebook.elements.Element;
 import dev.gigaherz.guidebook.guidebook.elements.TextStyle;
@@ -24,7 +25,7 @@ public class PageData implements IParseable
     public final SectionRef ref;
     public String id;
     public Predicate<ConditionContext> condition;
-    public boolean conditionResult;
+    public int conditionIndex = -1;
 
     public final List<Element> elements = Lists.newArrayList();
 
@@ -41,7 +42,7 @@ public class PageData implements IParseable
         int top = 0;
         for (Element element : elements)
         {
-            if (element.conditionResult)
+            if (rendering.getBook().isConditionMet(element.conditionIndex))
             {
                 top = element.reflow(page.children, rendering, new Rect(new Point2I(0, top), pageSize), pageBounds);
             }
@@ -50,23 +51,18 @@ public class PageData implements IParseable
         return Collections.singletonList(page);
     }
 
-    public boolean reevaluateConditions(ConditionContext ctx)
+    public boolean isEmpty(BookDocument book)
     {
-        boolean oldValue = conditionResult;
-        conditionResult = condition == null || condition.test(ctx);
+        return elements.stream().noneMatch(e -> book.isConditionMet(e.conditionIndex));
+    }
 
-        boolean anyChanged = conditionResult != oldValue;
+    public void indexConditions(ConditionTable table, int chapter)
+    {
+        conditionIndex = table.add(chapter, condition);
         for (Element element : elements)
         {
-            anyChanged |= element.reevaluateConditions(ctx);
+            element.indexConditions(table, chapter);
         }
-
-        return anyChanged;
-    }
-
-    public boolean isEmpty()
-    {
-        return elements.stream().noneMatch(e -> e.conditionResult);
     }
 
     @Override
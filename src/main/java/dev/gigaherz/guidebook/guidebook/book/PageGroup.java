@@ -51,7 +51,7 @@ public class PageGroup extends PageData
         int top = pageBounds.position.y();
         for (Element element : elements)
         {
-            if (element.conditionResult)
+            if (rendering.getBook().isConditionMet(element.conditionIndex))
             {
                 top = element.reflow(page.children, rendering, new Rect(new Point2I(pageBounds.position.x(), top), pageBounds.size), pageBounds);
             }
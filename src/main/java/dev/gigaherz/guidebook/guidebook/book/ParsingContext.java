@@ -11,6 +11,14 @@ public interface ParsingContext
     boolean loadedFromConfigFolder();
     DocumentBuilder xmlDocumentBuilder();
     BookDocument document();
+    @Nullable
+    default BookDependencies dependencies()
+    {
+        var doc = document();
+        if (doc == null)
+            return null;
+        return doc.getDependencies();
+    }
     default Predicate<ConditionContext> getCondition(String name)
     {
         var doc = document();
@@ -18,6 +26,15 @@ public interface ParsingContext
             return null;
         return doc.getCondition(name);
     }
+    /**
+     * Counts an element used by a template instance without copying it. Template libraries aren't parsed for a document, so nothing is counted.
+     */
+    default void countSharedElement()
+    {
+        var doc = document();
+        if (doc != null)
+            doc.countSharedElement();
+    }
     default ChapterData chapter()
     {
         return null;
@@ -58,6 +75,12 @@ public interface ParsingContext
             return delegate.document();
         }
 
+        @Override
+        public BookDependencies dependencies()
+        {
+            return delegate.dependencies();
+        }
+
         @Override
         public Predicate<ConditionContext> getCondition(String name)
         {
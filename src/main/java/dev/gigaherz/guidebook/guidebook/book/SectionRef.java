@@ -16,6 +16,10 @@ public class SectionRef
     public String chapterName;
     public String sectionName;
 
+    // Why the names could not be resolved, if they were tried and failed.
+    @Nullable
+    private String error;
+
     public SectionRef(int chapter, int section)
     {
         this.chapter = chapter;
@@ -30,88 +34,96 @@ public class SectionRef
     }
 
     /**
+     * Resolves the names on first use. Books resolve all their references when they are loaded, so this is normally just a field check.
+     *
      * @param bookDocument the book which contains the referenced section
      * @return <code>false</code> if the {@link SectionRef} has no valid target
      */
     public boolean resolve(BookDocument bookDocument)
     {
-        if (!resolvedNames)
+        if (!resolvedNames && error == null)
         {
-            try
-            {
-                if (!Strings.isNullOrEmpty(chapterName))
-                {
-                    Integer ch = Ints.tryParse(chapterName);
-                    if (ch != null)
-                    {
-                        chapter = ch;
-                    }
-                    else
-                    {
-                        chapter = bookDocument.chaptersByName.get(chapterName);
-                    }
-
-                    if (!Strings.isNullOrEmpty(sectionName))
-                    {
-                        Integer pg = Ints.tryParse(sectionName);
-                        if (pg != null)
-                        {
-                            section = pg;
-                        }
-                        else
-                        {
-                            section = bookDocument.chapters.get(chapter).sectionsByName.get(sectionName);
-                        }
-                    }
-                }
-                else if (!Strings.isNullOrEmpty(sectionName))
-                {
-                    SectionRef temp = bookDocument.sectionsByName.get(sectionName);
-                    temp.resolve(bookDocument);
-                    chapter = temp.chapter;
-                    section = temp.section;
-                }
-                else
-                {
-                    //throw error if neither field is defined
-                    throw new InvalidPageRefException("Invalid format: missing section and chapter");
-                }
-            }
-            catch (Exception e)
+            String problem = tryResolve(bookDocument);
+            if (problem != null)
             {
-                //try to parse the section ref into a string: <chapter>:<section>
-                String ref_string = (Strings.isNullOrEmpty(chapterName) ? "<none>" : (chapterName)) +
-                        ":" + (Strings.isNullOrEmpty(sectionName) ? "<none>" : (sectionName));
-                //log error
-                GuidebookMod.logger.error(
-                        String.format(
-                                "Invalid section reference: \"%s\" in book \"%s\" caused by: %s",
-                                ref_string,
-                                bookDocument.getName(),
-                                e.toString()
-                        )
-                );
-                return false; // =section ref has no valid target
+                GuidebookMod.logger.error("Invalid section reference \"{}\" in book \"{}\": {}", this, bookDocument.getName(), problem);
             }
         }
-        return true;
+        return resolvedNames;
     }
 
-    public SectionRef copy()
+    /**
+     * Resolves the chapter and section names into numbers, checking that the target exists.
+     * A reference that fails to resolve is remembered as broken, and isn't looked up again.
+     *
+     * @return <code>null</code> if the reference is valid, or else why it isn't
+     */
+    @Nullable
+    public String tryResolve(BookDocument bookDocument)
     {
-        return new SectionRef(chapter, section);
+        if (resolvedNames || error != null)
+            return error;
+
+        error = findTarget(bookDocument);
+        resolvedNames = error == null;
+        return error;
     }
 
-    /**
-     * Thrown by {@link SectionRef#resolve(BookDocument)} in any case that normally wouldn't cause an exception
-     * but still signifies that the {@link SectionRef} has no valid target and is therefore invalid.
-     */
-    public static class InvalidPageRefException extends Exception
+    @Nullable
+    private String findTarget(BookDocument bookDocument)
     {
-        public InvalidPageRefException(String s)
+        if (!Strings.isNullOrEmpty(chapterName))
+        {
+            Integer ch = Ints.tryParse(chapterName);
+            if (ch == null)
+            {
+                ch = bookDocument.chaptersByName.get(chapterName);
+                if (ch == null)
+                    return "there is no chapter named " + chapterName;
+            }
+            if (ch < 0 || ch >= bookDocument.chapters.size())
+                return "chapter " + ch + " does not exist";
+
+            int sec = section;
+            if (!Strings.isNullOrEmpty(sectionName))
+            {
+                ChapterData chapterData = bookDocument.chapters.get(ch);
+                Integer pg = Ints.tryParse(sectionName);
+                if (pg == null)
+                {
+                    pg = chapterData.sectionsByName.get(sectionName);
+                    if (pg == null)
+                        return "there is no section named " + sectionName + " in chapter " + chapterName;
+                }
+                if (pg < 0 || pg >= chapterData.sections.size())
+                    return "section " + pg + " does not exist in chapter " + chapterName;
+                sec = pg;
+            }
+
+            chapter = ch;
+            section = sec;
+            return null;
+        }
+
+        if (!Strings.isNullOrEmpty(sectionName))
         {
-            super(s);
+            SectionRef target = bookDocument.sectionsByName.get(sectionName);
+            if (target == null)
+                return "there is no section named " + sectionName;
+
+            chapter = target.chapter;
+            section = target.section;
+            return null;
         }
+
+        return "missing section and chapter";
+    }
+
+    public SectionRef copy()
+    {
+        if (!resolvedNames)
+            return new SectionRef(chapterName, sectionName);
+        return new SectionRef(chapter, section);
     }
 
     /**
@@ -132,6 +144,14 @@ public class SectionRef
         }
     }
 
+    @Override
+    public String toString()
+    {
+        if (resolvedNames)
+            return chapter + ":" + section;
+        return (Strings.isNullOrEmpty(chapterName) ? "<none>" : chapterName) + ":" + (Strings.isNullOrEmpty(sectionName) ? "<none>" : sectionName);
+    }
+
     @Override
     public boolean equals(Object obj)
     {
@@ -0,0 +1,178 @@
+package dev.gigaherz.guidebook.guidebook.book;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable copy of the root element of an XML file. Unlike a DOM tree, it can be shared between threads and books,
+ * and every user gets a fresh DOM tree out of it with {@link #toNode(Document)}, which it is free to modify.
+ */
+public class XmlFragment
+{
+    private final ElementPart root;
+
+    private XmlFragment(ElementPart root)
+    {
+        this.root = root;
+    }
+
+    public String getRootName()
+    {
+        return root.name();
+    }
+
+    public Node toNode(Document owner)
+    {
+        return root.toNode(owner);
+    }
+
+    public static XmlFragment parse(byte[] data) throws XMLStreamException
+    {
+        XMLStreamReader reader = XmlParsers.streamReader(new ByteArrayInputStream(data));
+        try
+        {
+            List<ElementBuilder> stack = Lists.newArrayList();
+            StringBuilder text = new StringBuilder();
+            while (reader.hasNext())
+            {
+                switch (reader.next())
+                {
+                    case XMLStreamConstants.START_ELEMENT ->
+                    {
+                        flushText(stack, text);
+                        stack.add(new ElementBuilder(reader));
+                    }
+                    case XMLStreamConstants.END_ELEMENT ->
+                    {
+                        flushText(stack, text);
+                        ElementPart element = stack.remove(stack.size() - 1).build();
+                        if (stack.isEmpty())
+                            return new XmlFragment(element);
+                        last(stack).children.add(element);
+                    }
+                    // StAX may split a text run in several events, the DOM parser normalizes them into a single node.
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.SPACE ->
+                    {
+                        if (!stack.isEmpty())
+                            text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    }
+                    case XMLStreamConstants.CDATA -> addChild(stack, text, new TextPart(Node.CDATA_SECTION_NODE, reader.getText()));
+                    case XMLStreamConstants.COMMENT -> addChild(stack, text, new TextPart(Node.COMMENT_NODE, reader.getText()));
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION -> addChild(stack, text, new InstructionPart(reader.getPITarget(), reader.getPIData()));
+                    default ->
+                    {
+                    }
+                }
+            }
+            throw new XMLStreamException("The document has no root element");
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    private static ElementBuilder last(List<ElementBuilder> stack)
+    {
+        return stack.get(stack.size() - 1);
+    }
+
+    private static void addChild(List<ElementBuilder> stack, StringBuilder text, Part part)
+    {
+        // Comments and instructions outside of the root element are not part of the fragment.
+        if (stack.isEmpty())
+            return;
+        flushText(stack, text);
+        last(stack).children.add(part);
+    }
+
+    private static void flushText(List<ElementBuilder> stack, StringBuilder text)
+    {
+        if (text.length() > 0)
+        {
+            last(stack).children.add(new TextPart(Node.TEXT_NODE, text.toString()));
+            text.setLength(0);
+        }
+    }
+
+    private interface Part
+    {
+        Node toNode(Document owner);
+    }
+
+    private record ElementPart(String name, ImmutableMap<String, String> attributes, ImmutableList<Part> children) implements Part
+    {
+        @Override
+        public Node toNode(Document owner)
+        {
+            Element element = owner.createElement(name);
+            for (Map.Entry<String, String> attribute : attributes.entrySet())
+            {
+                element.setAttribute(attribute.getKey(), attribute.getValue());
+            }
+            for (Part child : children)
+            {
+                element.appendChild(child.toNode(owner));
+            }
+            return element;
+        }
+    }
+
+    private record TextPart(short type, String text) implements Part
+    {
+        @Override
+        public Node toNode(Document owner)
+        {
+            return switch (type)
+            {
+                case Node.CDATA_SECTION_NODE -> owner.createCDATASection(text);
+                case Node.COMMENT_NODE -> owner.createComment(text);
+                default -> owner.createTextNode(text);
+            };
+        }
+    }
+
+    private record InstructionPart(String target, @Nullable String data) implements Part
+    {
+        @Override
+        public Node toNode(Document owner)
+        {
+            return owner.createProcessingInstruction(target, data);
+        }
+    }
+
+    private static class ElementBuilder
+    {
+        final String name;
+        final ImmutableMap<String, String> attributes;
+        final ImmutableList.Builder<Part> children = ImmutableList.builder();
+
+        ElementBuilder(XMLStreamReader reader)
+        {
+            name = XmlFragmentReader.qualifiedName(reader);
+            ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+            for (int i = 0; i < reader.getAttributeCount(); i++)
+            {
+                builder.put(XmlFragmentReader.qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)), reader.getAttributeValue(i));
+            }
+            attributes = builder.build();
+        }
+
+        ElementPart build()
+        {
+            return new ElementPart(name, attributes, children.build());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package dev.gigaherz.guidebook.guidebook.book;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Builds DOM nodes out of a StAX stream one element at a time, so that only the part of a book currently being parsed
+ * has to exist as a DOM tree. The nodes look the same as the ones the DOM parser would produce for that element.
+ */
+class XmlFragmentReader
+{
+    /**
+     * Reads the element the reader is positioned at, including all of its children.
+     * When this returns, the reader is positioned at the matching END_ELEMENT.
+     */
+    static Node readElement(XMLStreamReader reader, Document owner) throws XMLStreamException
+    {
+        Element root = readStartTag(reader, owner);
+        Node parent = root;
+        StringBuilder text = new StringBuilder();
+        int depth = 1;
+        while (depth > 0)
+        {
+            switch (reader.next())
+            {
+                case XMLStreamConstants.START_ELEMENT ->
+                {
+                    flushText(owner, parent, text);
+                    Element child = readStartTag(reader, owner);
+                    parent.appendChild(child);
+                    parent = child;
+                    depth++;
+                }
+                case XMLStreamConstants.END_ELEMENT ->
+                {
+                    flushText(owner, parent, text);
+                    parent = parent.getParentNode();
+                    depth--;
+                }
+                // StAX may split a text run in several events, the DOM parser normalizes them into a single node.
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.SPACE ->
+                        text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                case XMLStreamConstants.CDATA ->
+                {
+                    flushText(owner, parent, text);
+                    parent.appendChild(owner.createCDATASection(reader.getText()));
+                }
+                case XMLStreamConstants.COMMENT ->
+                {
+                    flushText(owner, parent, text);
+                    parent.appendChild(owner.createComment(reader.getText()));
+                }
+                case XMLStreamConstants.PROCESSING_INSTRUCTION ->
+                {
+                    flushText(owner, parent, text);
+                    parent.appendChild(owner.createProcessingInstruction(reader.getPITarget(), reader.getPIData()));
+                }
+                default ->
+                {
+                }
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Reads only the name and attributes of the element the reader is positioned at, leaving its children in the stream.
+     */
+    static Element readStartTag(XMLStreamReader reader, Document owner)
+    {
+        Element element = owner.createElement(qualifiedName(reader.getPrefix(), reader.getLocalName()));
+        for (int i = 0; i < reader.getAttributeCount(); i++)
+        {
+            element.setAttribute(qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)), reader.getAttributeValue(i));
+        }
+        return element;
+    }
+
+    static String qualifiedName(XMLStreamReader reader)
+    {
+        return qualifiedName(reader.getPrefix(), reader.getLocalName());
+    }
+
+    static String qualifiedName(String prefix, String localName)
+    {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    private static void flushText(Document owner, Node parent, StringBuilder text)
+    {
+        if (text.length() > 0)
+        {
+            parent.appendChild(owner.createTextNode(text.toString()));
+            text.setLength(0);
+        }
+    }
+}
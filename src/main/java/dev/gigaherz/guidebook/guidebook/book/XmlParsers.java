@@ -0,0 +1,152 @@
+package dev.gigaherz.guidebook.guidebook.book;
+
+import dev.gigaherz.guidebook.GuidebookMod;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Shared XML parser setup for books, includes and template libraries.
+ * The factories are configured once, and each thread keeps its own parsers, which are reset every time they are handed out.
+ * Parsers must not be kept across threads. Document builders are borrowed and given back, so that parses can nest,
+ * and a transformer must not be used again after asking for another one on the same thread.
+ */
+public class XmlParsers
+{
+    private static final String REPORT_CDATA_EVENT = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = newDocumentBuilderFactory();
+    private static final TransformerFactory TRANSFORMER_FACTORY = newTransformerFactory();
+    private static final XMLInputFactory XML_INPUT_FACTORY = newXmlInputFactory();
+
+    // The builders of this thread that nobody has borrowed.
+    private static final ThreadLocal<Deque<DocumentBuilder>> idleDocumentBuilders = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private static final ThreadLocal<Transformer> transformer = ThreadLocal.withInitial(() -> {
+        try
+        {
+            return TRANSFORMER_FACTORY.newTransformer();
+        }
+        catch (TransformerConfigurationException e)
+        {
+            throw new IllegalStateException("Could not create an XML transformer", e);
+        }
+    });
+
+    /**
+     * Borrows a document builder kept by this thread, in its initial configuration. A builder is never handed out again until it's given back,
+     * so a parse can borrow one while another parse on the same thread still holds its own, like a book parsing a template library.
+     * Must be closed on the same thread, once nothing else will be parsed with it.
+     */
+    public static PooledDocumentBuilder borrowDocumentBuilder()
+    {
+        DocumentBuilder builder = idleDocumentBuilders.get().poll();
+        if (builder == null)
+        {
+            try
+            {
+                builder = DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+            }
+            catch (ParserConfigurationException e)
+            {
+                throw new IllegalStateException("Could not create an XML document builder", e);
+            }
+        }
+        return new PooledDocumentBuilder(builder);
+    }
+
+    /**
+     * @return this thread's transformer, set up to serialize nodes without an XML declaration
+     */
+    public static Transformer transformer()
+    {
+        Transformer t = transformer.get();
+        t.reset();
+        t.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        return t;
+    }
+
+    /**
+     * Stream readers are cheap to create, only the factory is shared.
+     */
+    public static XMLStreamReader streamReader(InputStream stream) throws XMLStreamException
+    {
+        return XML_INPUT_FACTORY.createXMLStreamReader(stream);
+    }
+
+    /**
+     * @return a new factory with the same configuration as the shared one
+     */
+    public static DocumentBuilderFactory newDocumentBuilderFactory()
+    {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        setFeature(factory, XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        setFeature(factory, "http://xml.org/sax/features/external-general-entities", false);
+        setFeature(factory, "http://xml.org/sax/features/external-parameter-entities", false);
+        setFeature(factory, "http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        // Deferred nodes are expanded lazily on first read, which would make shared template attributes unsafe to read concurrently.
+        setFeature(factory, "http://apache.org/xml/features/dom/defer-node-expansion", false);
+        factory.setXIncludeAware(false);
+        return factory;
+    }
+
+    private static TransformerFactory newTransformerFactory()
+    {
+        TransformerFactory factory = TransformerFactory.newInstance();
+        try
+        {
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        }
+        catch (TransformerConfigurationException e)
+        {
+            GuidebookMod.logger.debug("XML transformer does not support secure processing", e);
+        }
+        return factory;
+    }
+
+    private static XMLInputFactory newXmlInputFactory()
+    {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        // The DOM parser isn't namespace aware either, custom elements use prefixed names without declaring them.
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        // The JDK reader reports CDATA sections as plain text unless asked, while the DOM parser keeps them as their own nodes.
+        if (factory.isPropertySupported(REPORT_CDATA_EVENT))
+            factory.setProperty(REPORT_CDATA_EVENT, true);
+        return factory;
+    }
+
+    public record PooledDocumentBuilder(DocumentBuilder builder) implements AutoCloseable
+    {
+        @Override
+        public void close()
+        {
+            builder.reset();
+            idleDocumentBuilders.get().push(builder);
+        }
+    }
+
+    private static void setFeature(DocumentBuilderFactory factory, String feature, boolean value)
+    {
+        try
+        {
+            factory.setFeature(feature, value);
+        }
+        catch (ParserConfigurationException e)
+        {
+            GuidebookMod.logger.debug("XML parser does not support feature {}", feature, e);
+        }
+    }
+}
@@ -9,6 +9,7 @@ import com.mojang.datafixers.util.Either;
 import com.mojang.datafixers.util.Pair;
 import dev.gigaherz.guidebook.guidebook.book.BookDocument;
 import dev.gigaherz.guidebook.guidebook.BookRegistry;
+import dev.gigaherz.guidebook.guidebook.BookReloadCoordinator;
 import net.minecraft.client.multiplayer.ClientLevel;
 import net.minecraft.client.renderer.block.model.BakedQuad;
 import net.minecraft.client.renderer.block.model.BlockModel;
@@ -43,7 +44,8 @@ public class BookBakedModel implements BakedModel
 
     public BookBakedModel(BakedModel baseModel, ModelBakery bakery, UnbakedModel unbakedModel, Function<ResourceLocation, UnbakedModel> modelGetter,
                           Function<Material, TextureAtlasSprite> spriteGetter, boolean isSideLit, ItemTransforms cameraTransforms,
-                          Map<ResourceLocation, BakedModel> bookModels, Map<ResourceLocation, BakedModel> coverModels, @Nullable TextureAtlasSprite particle, ItemOverrides originalOverrides)
+                          Map<ResourceLocation, BakedModel> bookModels, Map<ResourceLocation, BakedModel> coverModels, @Nullable TextureAtlasSprite particle, ItemOverrides originalOverrides,
+                          Map<ResourceLocation, BookDocument> books)
     {
         this.particle = particle;
         this.isSideLit = isSideLit;
@@ -58,7 +60,8 @@ public class BookBakedModel implements BakedModel
                 if (tag != null)
                 {
                     String book = tag.getString("Book");
-                    BookDocument bookDocument = BookRegistry.get(new ResourceLocation(book));
+                    // Use the same snapshot the models were baked from, so the book and model maps can't get out of sync
+                    BookDocument bookDocument = books.get(new ResourceLocation(book));
                     if (bookDocument != null)
                     {
                         ResourceLocation modelLocation = bookDocument.getModel();
@@ -140,6 +143,7 @@ public class BookBakedModel implements BakedModel
         private final BlockModel baseModel;
         private final Map<ResourceLocation, UnbakedModel> bookModels = Maps.newHashMap();
         private final Map<ResourceLocation, UnbakedModel> coverModels = Maps.newHashMap();
+        private Map<ResourceLocation, BookDocument> books = ImmutableMap.of();
 
         public Model(BlockModel baseModel)
         {
@@ -157,7 +161,7 @@ public class BookBakedModel implements BakedModel
 
             return new BookBakedModel(
                     baseModel.bake(bakery, baseModel, spriteGetter, modelTransform, modelLocation, true),
-                    bakery, owner.getOwnerModel(), bakery::getModel, spriteGetter, owner.isSideLit(), owner.getCameraTransforms(), bakedBookModels, bakedCoverModels, part, overrides);
+                    bakery, owner.getOwnerModel(), bakery::getModel, spriteGetter, owner.isSideLit(), owner.getCameraTransforms(), bakedBookModels, bakedCoverModels, part, overrides, books);
         }
 
         @Override
@@ -167,7 +171,9 @@ public class BookBakedModel implements BakedModel
 
             textures.addAll(baseModel.getMaterials(modelGetter, missingTextureErrors));
 
-            for (ResourceLocation bookModel : BookRegistry.gatherBookModels())
+            books = BookReloadCoordinator.awaitSnapshot().books();
+
+            for (ResourceLocation bookModel : BookRegistry.gatherBookModels(books))
             {
                 bookModels.computeIfAbsent(bookModel, (loc) -> {
                     UnbakedModel mdl = modelGetter.apply(loc);
@@ -176,7 +182,7 @@ public class BookBakedModel implements BakedModel
                 });
             }
 
-            for (ResourceLocation bookCover : BookRegistry.gatherBookCovers())
+            for (ResourceLocation bookCover : BookRegistry.gatherBookCovers(books))
             {
                 coverModels.computeIfAbsent(bookCover, (loc) -> {
                     BlockModel mdl = new BlockModel(
@@ -190,7 +196,7 @@ public class BookBakedModel implements BakedModel
                 });
             }
 
-            for (BookDocument renderer : BookRegistry.getLoadedBooks().values())
+            for (BookDocument renderer : books.values())
             {
                 renderer.findTextures(textures);
             }
@@ -204,7 +210,7 @@ public class BookBakedModel implements BakedModel
         @Override
         public void onResourceManagerReload(ResourceManager resourceManager)
         {
-            BookRegistry.parseAllBooks(resourceManager);
+            // Books are loaded once per reload by the BookReloadCoordinator, and picked up in Model#getTextures.
         }
 
         @Override
@@ -6,6 +6,7 @@ import com.mojang.blaze3d.systems.RenderSystem;
 import com.mojang.blaze3d.vertex.*;
 import com.mojang.math.Matrix4f;
 import dev.gigaherz.guidebook.ConfigValues;
+import dev.gigaherz.guidebook.GuidebookMod;
 import dev.gigaherz.guidebook.guidebook.book.BookDocument;
 import dev.gigaherz.guidebook.guidebook.HoverContext;
 import dev.gigaherz.guidebook.guidebook.IBookGraphics;
@@ -18,6 +19,7 @@ import dev.gigaherz.guidebook.guidebook.drawing.VisualPage;
 import dev.gigaherz.guidebook.guidebook.drawing.VisualText;
 import dev.gigaherz.guidebook.guidebook.elements.Element;
 import dev.gigaherz.guidebook.guidebook.util.Point2D;
+import dev.gigaherz.guidebook.guidebook.util.PrefixSumTree;
 import dev.gigaherz.guidebook.guidebook.util.Size;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.Font;
@@ -26,7 +28,6 @@ import net.minecraft.client.renderer.GameRenderer;
 import net.minecraft.client.renderer.entity.ItemRenderer;
 import net.minecraft.network.chat.Component;
 import net.minecraft.network.chat.FormattedText;
-import net.minecraft.network.chat.Style;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.util.Mth;
 import net.minecraft.world.item.ItemStack;
@@ -34,10 +35,11 @@ import net.minecraft.world.level.Level;
 import org.lwjgl.glfw.GLFW;
 
 import javax.annotation.Nullable;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.function.Consumer;
 
 public class BookRendering implements IBookGraphics
 {
@@ -49,6 +51,9 @@ public class BookRendering implements IBookGraphics
     public static final int DEFAULT_BOOK_HEIGHT = 192 + DEFAULT_TOP_MARGIN + DEFAULT_BOTTOM_MARGIN;
     public static final int BOOK_SCALE_MARGIN = 0;
 
+    // Time each frame may spend laying out chapters ahead of the reader.
+    private static final long PENDING_LAYOUT_BUDGET_NANOS = 3_000_000;
+
     private final Minecraft mc = Minecraft.getInstance();
     private GuidebookScreen gui;
 
@@ -71,8 +76,17 @@ public class BookRendering implements IBookGraphics
     private int pageWidth;
     private int pageHeight;
 
+    // Laid out chapters by chapter number, null until needed. Hidden chapters are laid out as empty.
     private final List<VisualChapter> chapters = Lists.newArrayList();
-    private int lastProcessedChapter = 0;
+    // Page pairs taken by each laid out chapter, to number pages without walking every chapter before them.
+    private PrefixSumTree chapterPairs = new PrefixSumTree(0);
+    // Every chapter before this one is laid out.
+    private int layoutFrontier = 0;
+    private final LayoutCache layoutCache = new LayoutCache();
+    // The TextMeasureCache generation the layouts were measured in, which changes when the fonts are reloaded.
+    private int fontGeneration;
+    // Time spent laying out chapters since the last time every chapter was laid out, or -1 once that was reported.
+    private long layoutNanos = 0;
 
     private final java.util.Stack<PageRef> history = new java.util.Stack<>();
     private int currentChapter = 0;
@@ -88,22 +102,66 @@ public class BookRendering implements IBookGraphics
     {
         this.book = book;
         this.gui = gui;
+        this.fontGeneration = TextMeasureCache.getGeneration(gui.getFontRenderer());
+    }
+
+    /**
+     * Drops the cached layouts if the fonts were reloaded since they were measured.
+     *
+     * @return true if the fonts changed, in which case the current layout has to be reset too
+     */
+    public boolean refreshFontGeneration()
+    {
+        int generation = TextMeasureCache.getGeneration(gui.getFontRenderer());
+        if (generation == fontGeneration)
+            return false;
+
+        fontGeneration = generation;
+        layoutCache.clear();
+        return true;
     }
 
     @Override
     public void resetRendering(boolean contentsChanged)
     {
         chapters.clear();
-        lastProcessedChapter = 0;
+        chapterPairs = new PrefixSumTree(0);
+        layoutFrontier = 0;
+        layoutNanos = 0;
         previousHovering = null;
         if (contentsChanged)
         {
+            layoutCache.clear();
             history.clear();
             currentChapter = 0;
             currentPair = 0;
         }
     }
 
+    /**
+     * Drops the layout of the chapters whose conditions changed, which will be laid out again when needed.
+     * The layout of every other chapter is kept, and so are the reader's position and history, except for the parts in changed chapters.
+     */
+    public void invalidateChapters(BitSet changedChapters)
+    {
+        previousHovering = null;
+        layoutNanos = 0;
+        for (int i = changedChapters.nextSetBit(0); i >= 0 && i < chapters.size(); i = changedChapters.nextSetBit(i + 1))
+        {
+            chapters.set(i, null);
+            chapterPairs.set(i, 0);
+            layoutFrontier = Math.min(layoutFrontier, i);
+        }
+
+        history.removeIf(ref -> changedChapters.get(ref.chapter));
+        if (changedChapters.get(currentChapter))
+        {
+            currentPair = 0;
+            if (!needChapter(currentChapter))
+                currentChapter = 0;
+        }
+    }
+
     @Override
     public Level getWorld()
     {
@@ -122,6 +180,11 @@ public class BookRendering implements IBookGraphics
         return book;
     }
 
+    void setBook(BookDocument book)
+    {
+        this.book = book;
+    }
+
     public void computeBookScale(double scaleFactorCoef)
     {
         int width = mc.getWindow().getWidth();
@@ -396,7 +459,7 @@ public class BookRendering implements IBookGraphics
         if (chapterNumber < 0 || chapterNumber >= book.chapterCount())
             return false;
         ChapterData ch = book.getChapter(chapterNumber);
-        return ch.conditionResult && !ch.isEmpty();
+        return book.isConditionMet(ch.conditionIndex) && !ch.isEmpty(book);
     }
 
     private boolean needSection(int chapterNumber, int sectionNumber)
@@ -405,7 +468,7 @@ public class BookRendering implements IBookGraphics
         if (sectionNumber < 0 || sectionNumber >= ch.sections.size())
             return false;
         PageData section = ch.sections.get(sectionNumber);
-        return section.conditionResult && !section.isEmpty();
+        return book.isConditionMet(section.conditionIndex) && !section.isEmpty(book);
     }
 
     private int findSectionStart(SectionRef ref)
@@ -443,34 +506,102 @@ public class BookRendering implements IBookGraphics
 
     private VisualChapter getVisualChapter(int chapter)
     {
-        while (chapters.size() <= chapter && lastProcessedChapter < book.chapterCount())
+        int count = book.chapterCount();
+        if (chapterPairs.size() != count)
         {
-            ChapterData bc = book.getChapter(lastProcessedChapter++);
-            if (!bc.conditionResult)
-                continue;
+            chapters.clear();
+            chapters.addAll(Collections.nCopies(count, null));
+            chapterPairs = new PrefixSumTree(count);
+            layoutFrontier = 0;
+        }
 
-            VisualChapter ch = new VisualChapter();
-            if (chapters.size() > 0)
+        if (chapter < 0 || chapter >= count)
+        {
+            VisualChapter vc = new VisualChapter();
+            vc.pages.add(new VisualPage(new SectionRef(chapter, 0)));
+            return vc;
+        }
+
+        VisualChapter ch = chapters.get(chapter);
+        if (ch == null)
+        {
+            BitSet conditionState = book.getChapterConditionState(chapter);
+            LayoutCache.Key key = conditionState != null
+                    ? new LayoutCache.Key(chapter, pageWidth, pageHeight, book.getFontSize(), ConfigValues.flexibleScale, scalingFactor, conditionState)
+                    : null;
+
+            ch = key != null ? layoutCache.get(key) : null;
+            if (ch == null)
             {
-                VisualChapter prev = chapters.get(chapters.size() - 1);
-                ch.startPair = prev.startPair + prev.totalPairs;
+                long start = System.nanoTime();
+                ch = new VisualChapter();
+                ChapterData bc = book.getChapter(chapter);
+                if (book.isConditionMet(bc.conditionIndex))
+                {
+                    Size pageSize = new Size(pageWidth, pageHeight);
+                    bc.reflow(this, ch, pageSize);
+                }
+                layoutNanos = Math.max(layoutNanos, 0) + System.nanoTime() - start;
+                ch.totalPairs = (ch.pages.size() + 1) / 2;
+
+                if (key != null)
+                    layoutCache.put(key, ch);
             }
 
-            Size pageSize = new Size(pageWidth, pageHeight);
-            bc.reflow(this, ch, pageSize);
+            chapters.set(chapter, ch);
+            chapterPairs.set(chapter, ch.totalPairs);
+        }
+        return ch;
+    }
+
+    /**
+     * @return the number of page pairs before the chapter, or -1 if some chapter before it isn't laid out yet
+     */
+    private int getStartPair(int chapter)
+    {
+        advanceLayoutFrontier();
+        if (layoutFrontier < chapter)
+            return -1;
+        return chapterPairs.sumBefore(chapter);
+    }
 
-            ch.totalPairs = (ch.pages.size() + 1) / 2;
-            chapters.add(ch);
+    private void advanceLayoutFrontier()
+    {
+        while (layoutFrontier < chapters.size() && chapters.get(layoutFrontier) != null)
+        {
+            layoutFrontier++;
         }
+    }
+
+    /**
+     * Lays out chapters the reader hasn't opened yet, until the time budget for this frame runs out.
+     * The chapters next to the current one go first, since they are the most likely to be opened next, then every other one in order,
+     * which is what page numbers need. Opening any chapter only has to wait for that chapter, never for the ones before it.
+     */
+    public void layoutPendingChapters()
+    {
+        long deadline = System.nanoTime() + PENDING_LAYOUT_BUDGET_NANOS;
 
-        if (chapter >= chapters.size())
+        getVisualChapter(currentChapter);
+        int next = getNextChapter();
+        if (next >= 0)
+            getVisualChapter(next);
+        int prev = getPrevChapter();
+        if (prev >= 0 && System.nanoTime() < deadline)
+            getVisualChapter(prev);
+
+        advanceLayoutFrontier();
+        while (layoutFrontier < chapters.size() && System.nanoTime() < deadline)
         {
-            VisualChapter vc = new VisualChapter();
-            vc.pages.add(new VisualPage(new SectionRef(chapter, 0)));
-            return vc;
+            getVisualChapter(layoutFrontier);
+            advanceLayoutFrontier();
         }
 
-        return chapters.get(chapter);
+        if (layoutFrontier == chapters.size() && layoutNanos > 0)
+        {
+            GuidebookMod.logger.debug("Laid out book {} in {} ms, text measurement cache: {}", book.getLocation(), layoutNanos / 1000000, TextMeasureCache.getStats());
+            layoutNanos = -1;
+        }
     }
 
     @Override
@@ -687,10 +818,15 @@ public class BookRendering implements IBookGraphics
             e.draw(this, matrixStack);
         }
 
-        Component cnt = Component.literal(String.valueOf(ch.startPair * 2 + page + 1));
-        Size sz = measure(cnt);
+        // The number shows up once every chapter before this one has been laid out, which only takes a few frames.
+        int startPair = getStartPair(currentChapter);
+        if (startPair >= 0)
+        {
+            Component cnt = Component.literal(String.valueOf(startPair * 2 + page + 1));
+            Size sz = measure(cnt);
 
-        addString(matrixStack, (pageWidth - sz.width()) / 2, pageHeight + 8, cnt, 0xFF000000, 1.0f);
+            addString(matrixStack, (pageWidth - sz.width()) / 2, pageHeight + 8, cnt, 0xFF000000, 1.0f);
+        }
 
         matrixStack.popPose();
     }
@@ -785,19 +921,31 @@ public class BookRendering implements IBookGraphics
     public Size measure(FormattedText text)
     {
         Font font = gui.getFontRenderer();
-        int width = font.width(text);
+        int width = TextMeasureCache.width(font, text);
         return new Size(width, font.lineHeight);
     }
 
     @Override
     public List<VisualElement> measure(FormattedText text, int width, int firstLineWidth, float scale, Element.Position position, float baseline, Element.VerticalAlignment verticalAlignment)
+    {
+        return measure(shape(text), width, firstLineWidth, scale, position, baseline, verticalAlignment);
+    }
+
+    @Override
+    public LineBreaker.ShapedText shape(FormattedText text)
+    {
+        return LineBreaker.shape(gui.getFontRenderer(), text);
+    }
+
+    @Override
+    public List<VisualElement> measure(LineBreaker.ShapedText text, int width, int firstLineWidth, float scale, Element.Position position, float baseline, Element.VerticalAlignment verticalAlignment)
     {
         Font font = gui.getFontRenderer();
         List<VisualElement> sizes = Lists.newArrayList();
-        TextMetrics.wrapFormattedStringToWidth(font, (s) -> {
-            int width2 = font.width(s);
-            sizes.add(new VisualText(s, new Size((int) (width2 * scale), (int) (font.lineHeight * scale)), position, baseline, verticalAlignment, scale));
-        }, text, width / scale, firstLineWidth / scale, true);
+        LineBreaker.breakLines(text, firstLineWidth / scale, width / scale, (start, end) -> {
+            int width2 = text.width(start, end);
+            sizes.add(new VisualText(text.slice(start, end), new Size((int) (width2 * scale), (int) (font.lineHeight * scale)), position, baseline, verticalAlignment, scale));
+        });
         return sizes;
     }
 
@@ -829,64 +977,6 @@ public class BookRendering implements IBookGraphics
         return ((factory != null) ? factory : DEFAULT_BACKGROUND).create(guidebookScreen);
     }
 
-    private static class TextMetrics
-    {
-        private static void wrapFormattedStringToWidth(Font font, Consumer<Component> dest, FormattedText str, float wrapWidth, float wrapWidthFirstLine, boolean firstLine)
-        {
-            str.visit((style, text) -> {
-                wrapFormattedStringToWidth(font, dest, text, style, wrapWidth, wrapWidthFirstLine, firstLine);
-                return FormattedText.STOP_ITERATION;
-            }, Style.EMPTY);
-        }
-
-        private static void wrapFormattedStringToWidth(final Font font, final Consumer<Component> dest, final String str, final Style style, final float wrapWidth, final float wrapWidthFirstLine, final boolean firstLine)
-        {
-            if (str.length() == 0)
-                return;
-
-            int i = sizeStringToWidth(font, str, style, firstLine ? wrapWidthFirstLine : wrapWidth);
-
-            if (str.length() <= i)
-            {
-                dest.accept(Component.literal(str).withStyle(style));
-            }
-            else
-            {
-                if (i < 1) i = 1;
-                String firstPart = str.substring(0, i);
-                dest.accept(Component.literal(firstPart).withStyle(style));
-                char nextChar = str.charAt(i);
-                boolean isWhitespace = nextChar == ' ' || nextChar == '\n';
-                String secondPart = str.substring(i + (isWhitespace ? 1 : 0));
-                wrapFormattedStringToWidth(font, dest, secondPart, style, wrapWidth, wrapWidthFirstLine, false);
-            }
-        }
-
-        private static int sizeStringToWidth(Font font, String str, Style style, float wrapWidth)
-        {
-            int w = font.getSplitter().plainIndexAtWidth(str, (int) wrapWidth, style);
-
-            // If nothing fits or everything fits, no need to check for whitespace.
-            if (w == 0 || w == str.length()) return w;
-
-            if (isNonBreakWhitespace(str.charAt(w)))
-            {
-                return w;
-            }
-
-            while (w >= 0 && !isNonBreakWhitespace(str.charAt(w)))
-            {
-                w--;
-            }
-            return w + 1;
-        }
-
-        private static boolean isNonBreakWhitespace(char c)
-        {
-            return Character.isWhitespace(c) && c != '\u00A0' && c != '\u202F' && c != '\uFeFF';
-        }
-    }
-
     private class PageRef
     {
         public int chapter;
@@ -48,6 +48,23 @@ public class GuidebookScreen extends Screen
         bookLocation = book;
     }
 
+    /**
+     * Switches this screen to a new version of its book, after the book was reloaded while the screen was open.
+     */
+    public void reloadBook(BookDocument theBook)
+    {
+        if (book == null)
+            return;
+
+        ConditionContext conditionContext = new ConditionContext();
+        conditionContext.setPlayer(Minecraft.getInstance().player);
+        theBook.reevaluateConditions(conditionContext);
+
+        book.setBook(theBook);
+        theBook.setRendering(book);
+        book.resetRendering(true);
+    }
+
     @Override
     public boolean isPauseScreen()
     {
@@ -75,9 +92,16 @@ public class GuidebookScreen extends Screen
             else
             {
                 book.setGui(this);
-                if (conditions || book.refreshScalingFactor())
+                boolean rescaled = book.refreshScalingFactor();
+                boolean fontsChanged = book.refreshFontGeneration();
+                // Also moves the reader out of chapters whose conditions changed, which a new layout alone doesn't.
+                if (conditions)
                 {
-                    book.resetRendering(conditions);
+                    book.invalidateChapters(theBook.getChangedChapters());
+                }
+                if (rescaled || fontsChanged)
+                {
+                    book.resetRendering(false);
                 }
             }
 
@@ -112,7 +136,9 @@ public class GuidebookScreen extends Screen
     {
         this.width = minecraft.getWindow().getGuiScaledWidth();
         this.height = minecraft.getWindow().getGuiScaledHeight();
-        if (book.refreshScalingFactor())
+        boolean rescaled = book.refreshScalingFactor();
+        boolean fontsChanged = book.refreshFontGeneration();
+        if (rescaled || fontsChanged)
         {
             book.resetRendering(false);
         }
@@ -224,6 +250,9 @@ public class GuidebookScreen extends Screen
 
         renderBackground(matrixStack);
 
+        // Starts while the book is still opening, so most chapters are ready by the time it can be read.
+        book.layoutPendingChapters();
+
         background.draw(matrixStack, partialTicks, (int) bookHeight, (float) backgroundScale);
 
         if (background.isFullyOpen())
@@ -0,0 +1,93 @@
+package dev.gigaherz.guidebook.guidebook.client;
+
+import dev.gigaherz.guidebook.guidebook.drawing.VisualChapter;
+import dev.gigaherz.guidebook.guidebook.drawing.VisualElement;
+import dev.gigaherz.guidebook.guidebook.drawing.VisualPage;
+import dev.gigaherz.guidebook.guidebook.drawing.VisualPanel;
+
+import javax.annotation.Nullable;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Laid out chapters of one book, kept across changes of scale and condition results, so that going back to a page size
+ * or a set of results seen before doesn't lay out the chapters again.
+ * The least recently used layouts are dropped once there are more than {@link #MAX_ENTRIES} of them,
+ * or once they hold more than {@link #MAX_ELEMENTS} visual elements in total, which is what most of their memory goes to.
+ */
+public class LayoutCache
+{
+    private static final int MAX_ENTRIES = 512;
+    private static final int MAX_ELEMENTS = 50000;
+
+    private final Map<Key, Entry> layouts = new LinkedHashMap<>(16, 0.75f, true);
+    private int totalElements;
+
+    @Nullable
+    public VisualChapter get(Key key)
+    {
+        Entry entry = layouts.get(key);
+        return entry != null ? entry.chapter : null;
+    }
+
+    public void put(Key key, VisualChapter chapter)
+    {
+        Entry entry = new Entry(chapter, countElements(chapter));
+        Entry old = layouts.put(key, entry);
+        if (old != null)
+            totalElements -= old.elements;
+        totalElements += entry.elements;
+
+        Iterator<Entry> it = layouts.values().iterator();
+        while ((layouts.size() > MAX_ENTRIES || totalElements > MAX_ELEMENTS) && it.hasNext())
+        {
+            Entry eldest = it.next();
+            if (eldest == entry)
+                break;
+            totalElements -= eldest.elements;
+            it.remove();
+        }
+    }
+
+    public void clear()
+    {
+        layouts.clear();
+        totalElements = 0;
+    }
+
+    private static int countElements(VisualChapter chapter)
+    {
+        int count = 0;
+        for (VisualPage page : chapter.pages)
+        {
+            count += countElements(page.children);
+        }
+        return count;
+    }
+
+    private static int countElements(List<VisualElement> elements)
+    {
+        int count = elements.size();
+        for (VisualElement element : elements)
+        {
+            if (element instanceof VisualPanel panel)
+                count += countElements(panel.children);
+        }
+        return count;
+    }
+
+    /**
+     * Everything the layout of a chapter depends on, including the GUI scale, which text is measured at. The condition state is a snapshot from
+     * {@link dev.gigaherz.guidebook.guidebook.book.BookDocument#getChapterConditionState}, which must not be modified afterwards.
+     */
+    public record Key(int chapter, int pageWidth, int pageHeight, float fontSize, boolean flexibleScale, float scale, BitSet conditionState)
+    {
+    }
+
+    private record Entry(VisualChapter chapter, int elements)
+    {
+    }
+}
@@ -0,0 +1,272 @@
+package dev.gigaherz.guidebook.guidebook.client;
+
+import net.minecraft.client.gui.Font;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.FormattedText;
+import net.minecraft.network.chat.MutableComponent;
+import net.minecraft.network.chat.Style;
+import net.minecraft.util.FormattedCharSequence;
+import net.minecraft.util.Mth;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Optional;
+
+/**
+ * Splits styled text into lines that fit a width, in two steps. Shaping walks the text once to find the advance of every character
+ * and where lines may break, and doesn't depend on the width, so its result can be kept and used again when the page size changes.
+ * Breaking then finds each line by index over those, without copying the text or measuring it again.
+ * Lines break after whitespace when they can, and in the middle of a word only when the word doesn't fit in a whole line.
+ */
+public class LineBreaker
+{
+    @FunctionalInterface
+    public interface LineConsumer
+    {
+        void accept(int start, int end);
+    }
+
+    /**
+     * Text flattened out of a {@link FormattedText}, with the total advance of the text before each char,
+     * and the whitespace lines can break at. For a surrogate pair, the whole advance is given to the first char of the pair.
+     */
+    public static class ShapedText
+    {
+        @Nullable
+        private final Font font;
+        private final int generation;
+        private final StringBuilder text = new StringBuilder();
+        // Sums of the advances of every char before each index, with one more at the end for the whole text.
+        // Advances are multiples of small powers of two, so the sums are exact.
+        private double[] offsets = new double[17];
+        private final BitSet breaks = new BitSet();
+        private boolean hasFormattingCodes;
+        private int[] runStarts = new int[4];
+        private Style[] runStyles = new Style[4];
+        private int runCount;
+
+        private ShapedText(@Nullable Font font, int generation)
+        {
+            this.font = font;
+            this.generation = generation;
+        }
+
+        public int length()
+        {
+            return text.length();
+        }
+
+        /**
+         * @return false if the font changed or resources were reloaded since this was shaped, and it has to be shaped again
+         */
+        public boolean isCurrent()
+        {
+            return TextMeasureCache.isCurrent(font, generation);
+        }
+
+        /**
+         * @return the same width the font gives to {@link #slice} of the same range
+         */
+        public int width(int start, int end)
+        {
+            // Formatting codes are only applied when drawing, and change the width of the text around them.
+            if (hasFormattingCodes)
+                return TextMeasureCache.width(font, slice(start, end));
+            return Mth.ceil(offsets[end] - offsets[start]);
+        }
+
+        /**
+         * @return the part of the text between the two indices, keeping the style of each run it crosses
+         */
+        public Component slice(int start, int end)
+        {
+            int run = findRun(start);
+            int runEnd = runEnd(run);
+            if (end <= runEnd)
+            {
+                return Component.literal(text.substring(start, end)).withStyle(runStyles[run]);
+            }
+
+            MutableComponent line = Component.empty();
+            int from = start;
+            while (from < end)
+            {
+                int to = Math.min(end, runEnd);
+                if (to > from)
+                    line.append(Component.literal(text.substring(from, to)).withStyle(runStyles[run]));
+                from = to;
+                runEnd = runEnd(++run);
+            }
+            return line;
+        }
+
+        private int findRun(int index)
+        {
+            int i = Arrays.binarySearch(runStarts, 0, runCount, index);
+            if (i < 0)
+                i = -i - 2;
+            // Empty runs share their start with the next one.
+            while (i + 1 < runCount && runStarts[i + 1] <= index)
+                i++;
+            return i;
+        }
+
+        private int runEnd(int run)
+        {
+            return run + 1 < runCount ? runStarts[run + 1] : text.length();
+        }
+
+        private void append(String str, Style style, float[] advances)
+        {
+            if (runCount == runStarts.length)
+            {
+                runStarts = Arrays.copyOf(runStarts, runCount * 2);
+                runStyles = Arrays.copyOf(runStyles, runCount * 2);
+            }
+            runStarts[runCount] = text.length();
+            runStyles[runCount] = style;
+            runCount++;
+
+            int offset = text.length();
+            text.append(str);
+            if (offsets.length <= text.length())
+                offsets = Arrays.copyOf(offsets, Math.max(offsets.length * 2, text.length() + 1));
+
+            for (int i = 0; i < advances.length; i++)
+            {
+                char c = str.charAt(i);
+                offsets[offset + i + 1] = offsets[offset + i] + advances[i];
+                if (isBreakingWhitespace(c))
+                    breaks.set(offset + i);
+                if (c == '\u00A7')
+                    hasFormattingCodes = true;
+            }
+        }
+    }
+
+    /**
+     * Walks every styled segment of the text once.
+     */
+    public static ShapedText shape(Font font, FormattedText text)
+    {
+        ShapedText shaped = new ShapedText(font, TextMeasureCache.getGeneration(font));
+        text.visit((style, str) -> {
+            shaped.append(str, style, TextMeasureCache.advances(font, str, style));
+            return Optional.empty();
+        }, Style.EMPTY);
+        return shaped;
+    }
+
+    /**
+     * Shapes unstyled text with advances given by the caller instead of measured with a font, which is never current.
+     * The text must not contain formatting codes, since measuring those needs the font.
+     */
+    static ShapedText shape(String text, float[] advances)
+    {
+        ShapedText shaped = new ShapedText(null, -1);
+        shaped.append(text, Style.EMPTY, advances);
+        return shaped;
+    }
+
+    /**
+     * @return the advance of each char of the string, measured the same way as {@link net.minecraft.client.StringSplitter#plainIndexAtWidth}
+     */
+    static float[] measureAdvances(Font font, String str, Style style)
+    {
+        float[] advances = new float[str.length()];
+        for (int i = 0; i < str.length(); )
+        {
+            int codepoint = str.codePointAt(i);
+            advances[i] = font.getSplitter().stringWidth(FormattedCharSequence.codepoint(codepoint, style));
+            i += Character.charCount(codepoint);
+        }
+        return advances;
+    }
+
+    /**
+     * Finds where each line starts and ends. The first line can be given a different width, for text that continues a line
+     * started by something else. If not even a word fits in it, the first line is left empty and the text starts at the full width.
+     * A line that ends at the last whitespace that fits keeps that whitespace, and whitespace that doesn't fit at the end of a line is dropped.
+     */
+    public static void breakLines(ShapedText shaped, float firstLineWidth, float wrapWidth, LineConsumer dest)
+    {
+        CharSequence text = shaped.text;
+        BitSet breaks = shaped.breaks;
+        int length = text.length();
+
+        int start = 0;
+        boolean firstLine = true;
+        while (start < length)
+        {
+            int maxWidth = (int) (firstLine ? firstLineWidth : wrapWidth);
+            int fit = findFit(shaped.offsets, start, length, maxWidth);
+
+            if (fit == length)
+            {
+                dest.accept(start, length);
+                return;
+            }
+
+            int end;
+            int next;
+            if (breaks.get(fit))
+            {
+                end = fit;
+                next = fit + 1;
+            }
+            else
+            {
+                int space = fit > start ? breaks.previousSetBit(fit - 1) : -1;
+                if (space >= start)
+                {
+                    end = space + 1;
+                    next = end;
+                }
+                else if (firstLine && firstLineWidth < wrapWidth)
+                {
+                    firstLine = false;
+                    continue;
+                }
+                else
+                {
+                    // A word longer than the line, so break inside it, always moving forward by at least a whole character.
+                    // The second char of a surrogate pair has no advance, so it never stops a line by itself.
+                    end = fit > start ? fit : start + Character.charCount(Character.codePointAt(text, start));
+                    next = end;
+                }
+            }
+
+            if (end > start)
+                dest.accept(start, end);
+            start = next;
+            firstLine = false;
+        }
+    }
+
+    /**
+     * Same rule as StringSplitter: a char fits as long as the total doesn't go past the width.
+     *
+     * @return the first char from the start that doesn't fit, or the length if everything does
+     */
+    private static int findFit(double[] offsets, int start, int length, int maxWidth)
+    {
+        double limit = offsets[start] + maxWidth;
+        int low = start;
+        int high = length;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (offsets[mid + 1] > limit)
+                high = mid;
+            else
+                low = mid + 1;
+        }
+        return low;
+    }
+
+    private static boolean isBreakingWhitespace(char c)
+    {
+        return Character.isWhitespace(c) && c != '\u00A0' && c != '\u202F' && c != '\uFEFF';
+    }
+}
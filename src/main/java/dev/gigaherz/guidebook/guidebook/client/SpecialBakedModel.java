@@ -4,7 +4,6 @@ import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonObject;
 import com.mojang.blaze3d.vertex.PoseStack;
 import com.mojang.datafixers.util.Pair;
-import dev.gigaherz.guidebook.guidebook.BookRegistry;
 import net.minecraft.client.renderer.block.model.BakedQuad;
 import net.minecraft.client.renderer.block.model.ItemOverrides;
 import net.minecraft.client.renderer.block.model.ItemTransforms;
@@ -122,7 +121,7 @@ public class SpecialBakedModel implements BakedModel
         @Override
         public void onResourceManagerReload(ResourceManager resourceManager)
         {
-            BookRegistry.parseAllBooks(resourceManager);
+            // This model doesn't depend on the books.
         }
 
         @Override
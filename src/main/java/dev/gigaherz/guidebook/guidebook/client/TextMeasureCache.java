@@ -0,0 +1,172 @@
+package dev.gigaherz.guidebook.guidebook.client;
+
+import net.minecraft.client.gui.Font;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.FormattedText;
+import net.minecraft.network.chat.Style;
+import net.minecraft.network.chat.contents.LiteralContents;
+
+import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Text measurements made while laying out books, shared by every book. The same runs of text come up again and again,
+ * like template labels and item names, and measuring them means looking up every glyph in the font.
+ * Only used from the render thread. The least recently used measurements of each kind are dropped past {@link #MAX_ENTRIES},
+ * and everything is forgotten when the font changes or resources are reloaded.
+ */
+public class TextMeasureCache
+{
+    private static final int MAX_ENTRIES = 8192;
+    private static final int MAX_CACHED_ADVANCES = 256;
+
+    private static final Map<WidthKey, Integer> widths = newLruMap();
+    private static final Map<AdvancesKey, float[]> advances = newLruMap();
+
+    @Nullable
+    private static Font lastFont;
+
+    private static long hits;
+    private static long misses;
+    private static long evictions;
+
+    // Changes every time the cache is emptied, so that measurements kept elsewhere can tell when they are out of date.
+    private static int generation;
+
+    private static <K, V> Map<K, V> newLruMap()
+    {
+        return new LinkedHashMap<>(256, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+            {
+                if (size() > MAX_ENTRIES)
+                {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static void clear()
+    {
+        widths.clear();
+        advances.clear();
+        lastFont = null;
+        generation++;
+    }
+
+    /**
+     * @return whether measurements made with this font in the given generation are still valid
+     */
+    public static boolean isCurrent(Font font, int generation)
+    {
+        return font == lastFont && generation == TextMeasureCache.generation;
+    }
+
+    public static int getGeneration(Font font)
+    {
+        checkFont(font);
+        return generation;
+    }
+
+    /**
+     * @return the same as {@code font.width(Component.literal(text).withStyle(style))}
+     */
+    public static int width(Font font, String text, Style style)
+    {
+        checkFont(font);
+        WidthKey key = new WidthKey(text, style);
+        Integer width = widths.get(key);
+        if (width != null)
+        {
+            hits++;
+            return width;
+        }
+
+        misses++;
+        int measured = font.width(Component.literal(text).withStyle(style));
+        widths.put(key, measured);
+        return measured;
+    }
+
+    /**
+     * Only text made of a single literal with no siblings is cached, anything else is measured directly.
+     */
+    public static int width(Font font, FormattedText text)
+    {
+        if (text instanceof Component component && component.getSiblings().isEmpty()
+                && component.getContents() instanceof LiteralContents literal)
+        {
+            return width(font, literal.text(), component.getStyle());
+        }
+        return font.width(text);
+    }
+
+    /**
+     * Only short strings are cached, long ones are rarely repeated and would take most of the space.
+     *
+     * @return the advance of each char of the text, see {@link LineBreaker}. The array must not be modified.
+     */
+    public static float[] advances(Font font, String text, Style style)
+    {
+        if (text.length() > MAX_CACHED_ADVANCES)
+            return LineBreaker.measureAdvances(font, text, style);
+
+        checkFont(font);
+        AdvancesKey key = new AdvancesKey(text, style);
+        float[] cached = advances.get(key);
+        if (cached != null)
+        {
+            hits++;
+            return cached;
+        }
+
+        misses++;
+        float[] measured = LineBreaker.measureAdvances(font, text, style);
+        advances.put(key, measured);
+        return measured;
+    }
+
+    public static Stats getStats()
+    {
+        return new Stats(hits, misses, evictions, widths.size() + advances.size());
+    }
+
+    private static void checkFont(Font font)
+    {
+        if (font != lastFont)
+        {
+            widths.clear();
+            advances.clear();
+            lastFont = font;
+            generation++;
+        }
+    }
+
+    public record Stats(long hits, long misses, long evictions, int size)
+    {
+        public double hitRate()
+        {
+            long total = hits + misses;
+            return total > 0 ? (double) hits / total : 0;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%d hits, %d misses (%.1f%% hit rate), %d evictions, %d measurements cached", hits, misses, hitRate() * 100, evictions, size);
+        }
+    }
+
+    private record WidthKey(String text, Style style)
+    {
+    }
+
+    private record AdvancesKey(String text, Style style)
+    {
+    }
+}
@@ -11,9 +11,8 @@ import net.minecraft.resources.ResourceLocation;
 import org.w3c.dom.Node;
 
 import javax.annotation.Nullable;
-import java.util.function.Predicate;
 
-public abstract class AdvancementCondition implements Predicate<ConditionContext>
+public abstract class AdvancementCondition implements StateCondition
 {
     public final ResourceLocation advancement;
 
@@ -32,6 +31,12 @@ public abstract class AdvancementCondition implements Predicate<ConditionContext
         this.advancement = advancement;
     }
 
+    @Override
+    public Object getStateKey()
+    {
+        return advancement;
+    }
+
     public static void register()
     {
         ConditionManager.register("advancement-locked", (node) -> new Locked(parseAdvancementLocation(node)));
@@ -11,10 +11,13 @@ import java.util.function.Predicate;
 
 public abstract class BasicConditions implements Predicate<ConditionContext>
 {
+    public static final True TRUE = new True();
+    public static final False FALSE = new False();
+
     public static void register()
     {
-        ConditionManager.register("true", (node) -> new True());
-        ConditionManager.register("false", (node) -> new False());
+        ConditionManager.register("true", (node) -> TRUE);
+        ConditionManager.register("false", (node) -> FALSE);
         ConditionManager.register("mod-loaded", (node) -> new ModLoaded(parseModId(node)));
         ConditionManager.register("item-exists", (node) -> new ItemExists(parseItemName(node)));
         ConditionManager.register("condition", (node) -> new Ref(parseConditionId(node)));
@@ -48,6 +51,11 @@ public abstract class BasicConditions implements Predicate<ConditionContext>
             this.ref = ref;
         }
 
+        public String getRef()
+        {
+            return ref;
+        }
+
         @Override
         public boolean test(ConditionContext conditionContext)
         {
@@ -14,6 +14,16 @@ public abstract class CompositeCondition implements Predicate<ConditionContext>
         this.children = children;
     }
 
+    protected boolean allMatch(ConditionContext conditionContext)
+    {
+        for (Predicate<ConditionContext> child : children)
+        {
+            if (!child.test(conditionContext))
+                return false;
+        }
+        return true;
+    }
+
     public static void register()
     {
         IDisplayConditionFactory any = (node) -> new Any(BookDocumentParser.parseChildConditions(node));
@@ -36,7 +46,12 @@ public abstract class CompositeCondition implements Predicate<ConditionContext>
         @Override
         public boolean test(ConditionContext conditionContext)
         {
-            return children.stream().anyMatch(t -> t.test(conditionContext));
+            for (Predicate<ConditionContext> child : children)
+            {
+                if (child.test(conditionContext))
+                    return true;
+            }
+            return false;
         }
     }
 
@@ -51,7 +66,7 @@ public abstract class CompositeCondition implements Predicate<ConditionContext>
         @Override
         public boolean test(ConditionContext conditionContext)
         {
-            return children.stream().allMatch(t -> t.test(conditionContext));
+            return allMatch(conditionContext);
         }
     }
 
@@ -66,7 +81,7 @@ public abstract class CompositeCondition implements Predicate<ConditionContext>
         @Override
         public boolean test(ConditionContext conditionContext)
         {
-            return !children.stream().allMatch(t -> t.test(conditionContext));
+            return !allMatch(conditionContext);
         }
     }
 }
@@ -1,13 +1,21 @@
 package dev.gigaherz.guidebook.guidebook.conditions;
 
+import dev.gigaherz.guidebook.GuidebookMod;
 import dev.gigaherz.guidebook.guidebook.book.BookDocument;
 import net.minecraft.client.player.LocalPlayer;
 
+import java.util.BitSet;
+
 public class ConditionContext
 {
     private LocalPlayer player;
     private BookDocument book;
 
+    // Results of the book's named conditions in the current pass, by index.
+    private final BitSet tested = new BitSet();
+    private final BitSet results = new BitSet();
+    private final BitSet testing = new BitSet();
+
     public LocalPlayer getPlayer()
     {
         return player;
@@ -16,6 +24,7 @@ public class ConditionContext
     public void setPlayer(LocalPlayer player)
     {
         this.player = player;
+        clearResults();
     }
 
     public BookDocument getBook()
@@ -26,5 +35,37 @@ public class ConditionContext
     public void setBook(BookDocument book)
     {
         this.book = book;
+        clearResults();
+    }
+
+    /**
+     * Starts a new evaluation pass, so named conditions are tested again the next time they are used.
+     */
+    public void clearResults()
+    {
+        tested.clear();
+        results.clear();
+        testing.clear();
+    }
+
+    boolean evaluate(NamedCondition condition)
+    {
+        int index = condition.getIndex();
+        if (tested.get(index))
+            return results.get(index);
+
+        if (testing.get(index))
+        {
+            GuidebookMod.logger.warn("Condition {} depends on itself, treating it as false", condition.getName());
+            return false;
+        }
+
+        testing.set(index);
+        boolean result = condition.getDefinition().test(this);
+        testing.clear(index);
+
+        tested.set(index);
+        results.set(index, result);
+        return result;
     }
 }
@@ -1,10 +1,14 @@
 package dev.gigaherz.guidebook.guidebook.conditions;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import dev.gigaherz.guidebook.guidebook.book.BookDocument;
 import org.w3c.dom.Node;
 
+import javax.annotation.Nullable;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 public class ConditionManager
@@ -23,4 +27,106 @@ public class ConditionManager
             return null;
         return factory.parse(node);
     }
+
+    /**
+     * Replaces the parts of a condition that can't change during a session with their result. This covers the basic conditions,
+     * references to named conditions that were folded already, and composites of those.
+     *
+     * @param namedConditions looks up the named conditions defined so far
+     * @return an instance of True or False if the whole condition is constant, or else a condition equivalent to the given one
+     */
+    public static Predicate<ConditionContext> fold(Predicate<ConditionContext> condition, Function<String, Predicate<ConditionContext>> namedConditions)
+    {
+        if (condition instanceof BasicConditions.ModLoaded || condition instanceof BasicConditions.ItemExists)
+        {
+            // Neither depends on the context, and both are fixed once the game has loaded.
+            return constant(condition.test(null));
+        }
+        if (condition instanceof BasicConditions.Ref ref)
+        {
+            Boolean value = getConstantValue(namedConditions.apply(ref.getRef()));
+            return value != null ? constant(value) : condition;
+        }
+        if (condition instanceof CompositeCondition.Any any)
+        {
+            List<Predicate<ConditionContext>> children = foldChildren(any.children, namedConditions, true);
+            if (children == null)
+                return constant(true);
+            return children.isEmpty() ? constant(false) : new CompositeCondition.Any(children);
+        }
+        if (condition instanceof CompositeCondition.All all)
+        {
+            List<Predicate<ConditionContext>> children = foldChildren(all.children, namedConditions, false);
+            if (children == null)
+                return constant(false);
+            return children.isEmpty() ? constant(true) : new CompositeCondition.All(children);
+        }
+        if (condition instanceof CompositeCondition.Not not)
+        {
+            List<Predicate<ConditionContext>> children = foldChildren(not.children, namedConditions, false);
+            if (children == null)
+                return constant(true);
+            return children.isEmpty() ? constant(false) : new CompositeCondition.Not(children);
+        }
+        return condition;
+    }
+
+    /**
+     * Folds the children of a composite, leaving out the ones that can't change its result.
+     *
+     * @param decisive the child value that decides the result of the composite on its own
+     * @return null if one of the children is always the decisive value, or else the children that still need to be tested
+     */
+    @Nullable
+    private static List<Predicate<ConditionContext>> foldChildren(List<Predicate<ConditionContext>> children,
+                                                                  Function<String, Predicate<ConditionContext>> namedConditions, boolean decisive)
+    {
+        List<Predicate<ConditionContext>> folded = Lists.newArrayList();
+        for (Predicate<ConditionContext> child : children)
+        {
+            Predicate<ConditionContext> f = fold(child, namedConditions);
+            Boolean value = getConstantValue(f);
+            if (value == null)
+                folded.add(f);
+            else if (value == decisive)
+                return null;
+        }
+        return folded;
+    }
+
+    private static Predicate<ConditionContext> constant(boolean value)
+    {
+        return value ? BasicConditions.TRUE : BasicConditions.FALSE;
+    }
+
+    /**
+     * @return the result of the condition if it was folded to a constant, or null if it has to be tested
+     */
+    @Nullable
+    public static Boolean getConstantValue(@Nullable Predicate<ConditionContext> condition)
+    {
+        if (condition instanceof NamedCondition named)
+            condition = named.getDefinition();
+        if (condition instanceof BasicConditions.True)
+            return true;
+        if (condition instanceof BasicConditions.False)
+            return false;
+        return null;
+    }
+
+    /**
+     * @return true for a condition that was folded to false, so whatever it applies to can never be shown
+     */
+    public static boolean isAlwaysFalse(@Nullable Predicate<ConditionContext> condition)
+    {
+        return getConstantValue(condition) == Boolean.FALSE;
+    }
+
+    /**
+     * @return true for a condition that was folded to true, so whatever it applies to doesn't need to test it
+     */
+    public static boolean isAlwaysTrue(@Nullable Predicate<ConditionContext> condition)
+    {
+        return getConstantValue(condition) == Boolean.TRUE;
+    }
 }
@@ -0,0 +1,95 @@
+package dev.gigaherz.guidebook.guidebook.conditions;
+
+import com.google.common.collect.Lists;
+
+import javax.annotation.Nullable;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * The distinct conditions used by the chapters, sections and elements of a book, numbered in the order they are found.
+ * Chapters, sections and elements keep the number of their condition, and the result of every condition is kept here in a bitset,
+ * so updating the results tests each condition once, instead of walking every element of the book.
+ */
+public class ConditionTable
+{
+    private final Map<Predicate<ConditionContext>, Integer> indices = new IdentityHashMap<>();
+    private final List<Predicate<ConditionContext>> conditions = Lists.newArrayList();
+    private final List<BitSet> chaptersByCondition = Lists.newArrayList();
+    private final List<BitSet> conditionsByChapter = Lists.newArrayList();
+    private final BitSet results = new BitSet();
+
+    /**
+     * Records that a chapter uses a condition.
+     *
+     * @return the number of the condition, or -1 if there is no condition
+     */
+    public int add(int chapter, @Nullable Predicate<ConditionContext> condition)
+    {
+        if (condition == null)
+            return -1;
+
+        int index = indices.computeIfAbsent(condition, c -> {
+            conditions.add(c);
+            chaptersByCondition.add(new BitSet());
+            return conditions.size() - 1;
+        });
+        chaptersByCondition.get(index).set(chapter);
+        while (conditionsByChapter.size() <= chapter)
+        {
+            conditionsByChapter.add(new BitSet());
+        }
+        conditionsByChapter.get(chapter).set(index);
+        return index;
+    }
+
+    public Predicate<ConditionContext> get(int index)
+    {
+        return conditions.get(index);
+    }
+
+    /**
+     * @return the numbers of the conditions used anywhere in the chapter. Must not be modified.
+     */
+    public BitSet getChapterConditions(int chapter)
+    {
+        return chapter < conditionsByChapter.size() ? conditionsByChapter.get(chapter) : new BitSet();
+    }
+
+    /**
+     * Tests every condition used by the given chapters once, and stores the results.
+     *
+     * @return the chapters that use a condition with a result that changed, which may include chapters that weren't given
+     */
+    public BitSet evaluate(ConditionContext context, BitSet chapters)
+    {
+        BitSet used = new BitSet();
+        for (int i = chapters.nextSetBit(0); i >= 0 && i < conditionsByChapter.size(); i = chapters.nextSetBit(i + 1))
+        {
+            used.or(conditionsByChapter.get(i));
+        }
+
+        BitSet changed = new BitSet();
+        for (int i = used.nextSetBit(0); i >= 0; i = used.nextSetBit(i + 1))
+        {
+            boolean result = conditions.get(i).test(context);
+            if (result != results.get(i))
+            {
+                results.set(i, result);
+                changed.or(chaptersByCondition.get(i));
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return the last result of the condition with the given number, or true for -1, which means there's no condition
+     */
+    public boolean test(int index)
+    {
+        return index < 0 || results.get(index);
+    }
+}
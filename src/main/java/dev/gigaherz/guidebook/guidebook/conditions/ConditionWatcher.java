@@ -0,0 +1,169 @@
+package dev.gigaherz.guidebook.guidebook.conditions;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import net.minecraft.client.player.LocalPlayer;
+
+import javax.annotation.Nullable;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Tracks which chapters of a book depend on which game state, so that after the first evaluation, a book only tests again
+ * the chapters where some of that state changed. Checking for changes tests one condition for each piece of state the book uses,
+ * instead of every condition in the book.
+ */
+public class ConditionWatcher
+{
+    private final Function<String, Predicate<ConditionContext>> namedConditions;
+
+    private final Map<Object, Integer> stateIndices = Maps.newHashMap();
+    private final List<StateCondition> states = Lists.newArrayList();
+    private final List<BitSet> dependentChapters = Lists.newArrayList();
+    // Chapters that use conditions this can't track, like custom ones, are always evaluated.
+    private final BitSet untrackedChapters = new BitSet();
+    private final Map<NamedCondition, Dependencies> namedDependencies = new IdentityHashMap<>();
+
+    private final BitSet lastResults = new BitSet();
+    private boolean evaluated;
+    @Nullable
+    private LocalPlayer lastPlayer;
+
+    public ConditionWatcher(Function<String, Predicate<ConditionContext>> namedConditions)
+    {
+        this.namedConditions = namedConditions;
+    }
+
+    /**
+     * Records that a chapter uses a condition.
+     */
+    public void addCondition(int chapter, @Nullable Predicate<ConditionContext> condition)
+    {
+        if (condition == null)
+            return;
+
+        Dependencies dependencies = new Dependencies();
+        collect(condition, dependencies);
+        for (int i = dependencies.states.nextSetBit(0); i >= 0; i = dependencies.states.nextSetBit(i + 1))
+        {
+            dependentChapters.get(i).set(chapter);
+        }
+        if (dependencies.untracked)
+        {
+            untrackedChapters.set(chapter);
+        }
+    }
+
+    /**
+     * @return the chapters that need their conditions evaluated again: all of them the first time or when the player changes,
+     * and after that only the ones that depend on state that changed since the last call.
+     */
+    public BitSet findChangedChapters(ConditionContext context, int chapterCount)
+    {
+        BitSet changed = new BitSet();
+        for (int i = 0; i < states.size(); i++)
+        {
+            boolean result = states.get(i).test(context);
+            if (result != lastResults.get(i))
+            {
+                changed.or(dependentChapters.get(i));
+                lastResults.set(i, result);
+            }
+        }
+
+        if (!evaluated || context.getPlayer() != lastPlayer)
+        {
+            evaluated = true;
+            lastPlayer = context.getPlayer();
+            changed.set(0, chapterCount);
+        }
+        else
+        {
+            changed.or(untrackedChapters);
+        }
+        return changed;
+    }
+
+    /**
+     * @return the last results of the state a chapter depends on, which decide every condition result in the chapter,
+     * or null if the chapter uses conditions this can't track.
+     */
+    @Nullable
+    public BitSet getChapterState(int chapter)
+    {
+        if (untrackedChapters.get(chapter))
+            return null;
+
+        BitSet state = new BitSet();
+        for (int i = 0; i < states.size(); i++)
+        {
+            if (dependentChapters.get(i).get(chapter) && lastResults.get(i))
+                state.set(i);
+        }
+        return state;
+    }
+
+    private void collect(Predicate<ConditionContext> condition, Dependencies into)
+    {
+        if (condition instanceof NamedCondition named)
+        {
+            Dependencies dependencies = namedDependencies.get(named);
+            if (dependencies == null)
+            {
+                // Stored before recursing, so a condition that depends on itself stops here.
+                dependencies = new Dependencies();
+                namedDependencies.put(named, dependencies);
+                collect(named.getDefinition(), dependencies);
+            }
+            into.add(dependencies);
+        }
+        else if (condition instanceof BasicConditions.Ref ref)
+        {
+            Predicate<ConditionContext> target = namedConditions.apply(ref.getRef());
+            if (target != null)
+                collect(target, into);
+            else
+                into.untracked = true;
+        }
+        else if (condition instanceof CompositeCondition composite)
+        {
+            for (Predicate<ConditionContext> child : composite.children)
+            {
+                collect(child, into);
+            }
+        }
+        else if (condition instanceof StateCondition state)
+        {
+            into.states.set(getStateIndex(state));
+        }
+        else if (!(condition instanceof BasicConditions))
+        {
+            into.untracked = true;
+        }
+    }
+
+    private int getStateIndex(StateCondition condition)
+    {
+        return stateIndices.computeIfAbsent(condition.getStateKey(), key -> {
+            states.add(condition);
+            dependentChapters.add(new BitSet());
+            return states.size() - 1;
+        });
+    }
+
+    private static class Dependencies
+    {
+        final BitSet states = new BitSet();
+        boolean untracked;
+
+        void add(Dependencies other)
+        {
+            states.or(other.states);
+            untracked |= other.untracked;
+        }
+    }
+}
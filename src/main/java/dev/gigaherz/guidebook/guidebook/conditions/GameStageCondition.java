@@ -5,9 +5,7 @@ import dev.gigaherz.guidebook.guidebook.BookParsingException;
 import net.darkhax.gamestages.GameStageHelper;
 import org.w3c.dom.Node;
 
-import java.util.function.Predicate;
-
-public abstract class GameStageCondition implements Predicate<ConditionContext>
+public abstract class GameStageCondition implements StateCondition
 {
     public final String stageName;
 
@@ -16,6 +14,12 @@ public abstract class GameStageCondition implements Predicate<ConditionContext>
         this.stageName = stageName;
     }
 
+    @Override
+    public Object getStateKey()
+    {
+        return new Stage(stageName);
+    }
+
     public static void register()
     {
         ConditionManager.register("stage-locked", (node) -> new Locked(parseStageName(node)));
@@ -52,6 +56,10 @@ public abstract class GameStageCondition implements Predicate<ConditionContext>
         }
     }
 
+    private record Stage(String name)
+    {
+    }
+
     private static String parseStageName(Node xmlNode)
     {
         Node attr = xmlNode.getAttributes().getNamedItem("stage");
@@ -0,0 +1,43 @@
+package dev.gigaherz.guidebook.guidebook.conditions;
+
+import java.util.function.Predicate;
+
+/**
+ * A condition defined in the conditions block of a book. This is what elements referencing the condition by name hold.
+ * Each one has an index within its book, and is only tested once per evaluation pass; every other use reads the result
+ * the {@link ConditionContext} stored for that index.
+ */
+public class NamedCondition implements Predicate<ConditionContext>
+{
+    private final String name;
+    private final int index;
+    private final Predicate<ConditionContext> definition;
+
+    public NamedCondition(String name, int index, Predicate<ConditionContext> definition)
+    {
+        this.name = name;
+        this.index = index;
+        this.definition = definition;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public int getIndex()
+    {
+        return index;
+    }
+
+    public Predicate<ConditionContext> getDefinition()
+    {
+        return definition;
+    }
+
+    @Override
+    public boolean test(ConditionContext conditionContext)
+    {
+        return conditionContext.evaluate(this);
+    }
+}
@@ -0,0 +1,16 @@
+package dev.gigaherz.guidebook.guidebook.conditions;
+
+import java.util.function.Predicate;
+
+/**
+ * A condition on game state that changes during play, like advancements or game stages.
+ * Books use the key to find out which chapters need to be evaluated again when that state changes.
+ */
+public interface StateCondition extends Predicate<ConditionContext>
+{
+    /**
+     * Identifies the state this condition reads. Conditions reading the same state must return equal keys,
+     * and their results must change together, although they may be negated.
+     */
+    Object getStateKey();
+}
@@ -10,6 +10,5 @@ public class VisualChapter
 {
     public final List<VisualPage> pages = Lists.newArrayList();
     public final Map<String, Integer> pagesByName = Maps.newHashMap();
-    public int startPair;
     public int totalPairs;
 }
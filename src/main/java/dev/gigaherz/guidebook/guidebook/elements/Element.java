@@ -1,9 +1,13 @@
 package dev.gigaherz.guidebook.guidebook.elements;
 
 import dev.gigaherz.guidebook.guidebook.IBookGraphics;
+import dev.gigaherz.guidebook.guidebook.book.AttributeSchema;
+import dev.gigaherz.guidebook.guidebook.book.BookCache;
 import dev.gigaherz.guidebook.guidebook.book.IParseable;
 import dev.gigaherz.guidebook.guidebook.book.ParsingContext;
 import dev.gigaherz.guidebook.guidebook.conditions.ConditionContext;
+import dev.gigaherz.guidebook.guidebook.conditions.ConditionManager;
+import dev.gigaherz.guidebook.guidebook.conditions.ConditionTable;
 import dev.gigaherz.guidebook.guidebook.drawing.VisualElement;
 import dev.gigaherz.guidebook.guidebook.templates.TemplateDefinition;
 import dev.gigaherz.guidebook.guidebook.util.Point2I;
@@ -14,6 +18,7 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -60,7 +65,20 @@ public abstract class Element implements IParseable
     public VerticalAlignment verticalAlignment = VerticalAlignment.BASELINE;
 
     public Predicate<ConditionContext> condition;
-    public boolean conditionResult;
+    // The number of the condition in the book's ConditionTable, or -1 if there is none. See BookDocument#isConditionMet.
+    public int conditionIndex = -1;
+
+    public static final AttributeSchema<Element> ATTRIBUTES = AttributeSchema.<Element>builder()
+            .intAttribute("x", (e, v) -> e.x = v)
+            .intAttribute("y", (e, v) -> e.y = v)
+            .intAttribute("z", (e, v) -> e.z = v)
+            .intAttribute("w", (e, v) -> e.w = v)
+            .intAttribute("h", (e, v) -> e.h = v)
+            .floatAttribute("baseline", (e, v) -> e.baseline = v)
+            .enumAttribute("position", Position.class, (e, v) -> e.position = v)
+            .enumAttribute("verticalAlignment", VerticalAlignment.class, (e, v) -> e.verticalAlignment = v)
+            .attribute("condition", (context, e, v) -> e.condition = context.getCondition(v))
+            .build();
 
     private static final Pattern WHITESPACE_ONLY = Pattern.compile("^\\s+$");
     protected static boolean isContentNode(Node node)
@@ -78,14 +96,6 @@ public abstract class Element implements IParseable
         return !WHITESPACE_ONLY.matcher(str).matches();
     }
 
-    public boolean reevaluateConditions(ConditionContext ctx)
-    {
-        boolean oldValue = conditionResult;
-        conditionResult = condition == null || condition.test(ctx);
-
-        return conditionResult != oldValue;
-    }
-
     public List<VisualElement> measure(IBookGraphics nav, int width, int firstLineWidth)
     {
         return Collections.emptyList();
@@ -97,11 +107,66 @@ public abstract class Element implements IParseable
     {
     }
 
+    /**
+     * Removes the elements whose condition was folded to false, since they can never be shown,
+     * and drops the conditions that were folded to true. See {@link ConditionManager#fold}.
+     */
+    public static void pruneStaticConditions(List<? extends Element> elements)
+    {
+        elements.removeIf(element -> ConditionManager.isAlwaysFalse(element.condition));
+        for (Element element : elements)
+        {
+            element.pruneStaticConditions();
+        }
+    }
+
+    /**
+     * Drops this element's condition if it was folded to true, and prunes its children, see {@link #pruneStaticConditions(List)}.
+     */
+    public void pruneStaticConditions()
+    {
+        if (ConditionManager.isAlwaysTrue(condition))
+        {
+            condition = null;
+        }
+    }
+
+    /**
+     * Numbers the conditions of this element and its children, so their results can be looked up without testing them again.
+     */
+    public void indexConditions(ConditionTable table, int chapter)
+    {
+        conditionIndex = table.add(chapter, condition);
+    }
+
+    /**
+     * Collects the links in this element and its children, so their targets can be resolved when the book is loaded.
+     */
+    public void findLinks(List<LinkContext> links)
+    {
+    }
+
     public abstract Element copy();
 
+    /**
+     * Whether every instance of a template can use this same element, instead of each getting its own copy.
+     * Only elements that are never modified after parsing, and don't contain template placeholders, can be shared.
+     * Caches computed from the element's own contents, like shaped text, don't count as modifications.
+     * Elements with a condition can't be shared either, since each keeps the index of its condition in its own book.
+     */
+    public boolean isShareable()
+    {
+        return false;
+    }
+
     @Nullable
     public Element applyTemplate(ParsingContext context, List<Element> sourceElements)
     {
+        if (isShareable())
+        {
+            context.countSharedElement();
+            return this;
+        }
         return copy();
     }
 
@@ -137,22 +202,20 @@ public abstract class Element implements IParseable
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public void parse(ParsingContext context, NamedNodeMap attributes)
     {
-        x = IParseable.getAttribute(attributes, "x", x);
-        y = IParseable.getAttribute(attributes, "y", y);
-        z = IParseable.getAttribute(attributes, "z", z);
-        w = IParseable.getAttribute(attributes, "w", w);
-        h = IParseable.getAttribute(attributes, "h", h);
-        baseline = IParseable.getAttribute(attributes, "baseline", baseline);
-        position = IParseable.getAttribute(attributes, "position", position, Position.class);
-        verticalAlignment = IParseable.getAttribute(attributes, "verticalAlignment", verticalAlignment, VerticalAlignment.class);
-
-        Node attr = attributes.getNamedItem("condition");
-        if (attr != null)
-        {
-            condition = context.getCondition(attr.getTextContent());
-        }
+        // getAttributeSchema is always a schema for this element's own class or one of its parents.
+        ((AttributeSchema<Element>) getAttributeSchema()).bind(context, this, attributes);
+    }
+
+    /**
+     * The attributes this element understands. Subclasses, including custom elements, can opt into schema binding
+     * by overriding this with a schema built from their parent's, instead of reading each attribute in {@link #parse}.
+     */
+    public AttributeSchema<? extends Element> getAttributeSchema()
+    {
+        return ATTRIBUTES;
     }
 
     @Override
@@ -160,6 +223,37 @@ public abstract class Element implements IParseable
     {
     }
 
+    /**
+     * Writes the parsed state of this element to the compiled book cache.
+     * Subclasses with additional state must override this and {@link #readCache(BookCache.Input)}, calling super first.
+     * Element types are only cached once they have been registered with {@link BookCache#registerElement}.
+     */
+    public void writeCache(BookCache.Output out) throws IOException
+    {
+        out.writeEnum(position);
+        out.writeInt(x);
+        out.writeInt(y);
+        out.writeInt(z);
+        out.writeInt(w);
+        out.writeInt(h);
+        out.writeFloat(baseline);
+        out.writeEnum(verticalAlignment);
+        out.writeCondition(condition);
+    }
+
+    public void readCache(BookCache.Input in) throws IOException
+    {
+        position = in.readEnum(Position.class);
+        x = in.readInt();
+        y = in.readInt();
+        z = in.readInt();
+        w = in.readInt();
+        h = in.readInt();
+        baseline = in.readFloat();
+        verticalAlignment = in.readEnum(VerticalAlignment.class);
+        condition = in.readCondition();
+    }
+
     @Override
     public String toString()
     {
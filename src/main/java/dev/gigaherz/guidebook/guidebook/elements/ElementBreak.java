@@ -24,6 +24,12 @@ public class ElementBreak extends Element
     {
     }
 
+    @Override
+    public boolean isShareable()
+    {
+        return condition == null;
+    }
+
     @Override
     public Element copy()
     {
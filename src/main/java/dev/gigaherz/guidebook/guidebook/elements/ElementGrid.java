@@ -4,10 +4,12 @@ import com.google.common.collect.Lists;
 import com.google.common.primitives.Ints;
 import dev.gigaherz.guidebook.guidebook.BookParsingException;
 import dev.gigaherz.guidebook.guidebook.IBookGraphics;
+import dev.gigaherz.guidebook.guidebook.book.AttributeSchema;
+import dev.gigaherz.guidebook.guidebook.book.BookCache;
 import dev.gigaherz.guidebook.guidebook.book.BookDocumentParser;
 import dev.gigaherz.guidebook.guidebook.book.IParseable;
 import dev.gigaherz.guidebook.guidebook.book.ParsingContext;
-import dev.gigaherz.guidebook.guidebook.conditions.ConditionContext;
+import dev.gigaherz.guidebook.guidebook.conditions.ConditionTable;
 import dev.gigaherz.guidebook.guidebook.drawing.VisualElement;
 import dev.gigaherz.guidebook.guidebook.drawing.VisualPanel;
 import dev.gigaherz.guidebook.guidebook.templates.TemplateDefinition;
@@ -21,6 +23,7 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.*;
 
 public class ElementGrid extends Element
@@ -30,39 +33,34 @@ public class ElementGrid extends Element
     public Integer height;
     public Integer width;
 
+    public static final AttributeSchema<ElementGrid> ATTRIBUTES = AttributeSchema.<ElementGrid>builder(Element.ATTRIBUTES)
+            .stringAttribute("height", (e, t) -> {
+                if (t.endsWith("%"))
+                {
+                    e.heightPercent = true;
+                    t = t.substring(0, t.length() - 1);
+                }
+
+                e.height = Ints.tryParse(t);
+            })
+            .stringAttribute("width", (e, t) -> {
+                if (t.endsWith("%"))
+                {
+                    e.widthPercent = true;
+                    t = t.substring(0, t.length() - 1);
+                }
+
+                e.width = Ints.tryParse(t);
+            })
+            .build();
+
     public List<Row> rows = new ArrayList<>();
     public List<Column> cols = new ArrayList<>();
 
     @Override
-    public void parse(ParsingContext context, NamedNodeMap attributes)
+    public AttributeSchema<? extends Element> getAttributeSchema()
     {
-        super.parse(context, attributes);
-
-        Node attr = attributes.getNamedItem("height");
-        if (attr != null)
-        {
-            String t = attr.getTextContent();
-            if (t.endsWith("%"))
-            {
-                heightPercent = true;
-                t = t.substring(0, t.length() - 1);
-            }
-
-            height = Ints.tryParse(t);
-        }
-
-        attr = attributes.getNamedItem("width");
-        if (attr != null)
-        {
-            String t = attr.getTextContent();
-            if (t.endsWith("%"))
-            {
-                widthPercent = true;
-                t = t.substring(0, t.length() - 1);
-            }
-
-            width = Ints.tryParse(t);
-        }
+        return ATTRIBUTES;
     }
 
     @Override
@@ -142,29 +140,90 @@ public class ElementGrid extends Element
     }
 
     @Override
-    public String toString(boolean complete)
+    public void writeCache(BookCache.Output out) throws IOException
     {
-        // TODO: Complete mode
-        return "<grid ...></grid>";
+        super.writeCache(out);
+        out.writeBoolean(heightPercent);
+        out.writeBoolean(widthPercent);
+        out.writeNullableInt(height);
+        out.writeNullableInt(width);
+
+        out.writeInt(cols.size());
+        for (var col : cols)
+        {
+            writeLength(out, col.width);
+        }
+
+        out.writeInt(rows.size());
+        for (var row : rows)
+        {
+            writeLength(out, row.height);
+            out.writeInt(row.cells.size());
+            for (var cell : row.cells)
+            {
+                out.writeInt(cell.colspan);
+                out.writeElement(cell.content);
+            }
+        }
     }
 
     @Override
-    public boolean reevaluateConditions(ConditionContext ctx)
+    public void readCache(BookCache.Input in) throws IOException
     {
-        boolean oldValue = conditionResult;
-        conditionResult = condition == null || condition.test(ctx);
+        super.readCache(in);
+        heightPercent = in.readBoolean();
+        widthPercent = in.readBoolean();
+        height = in.readNullableInt();
+        width = in.readNullableInt();
+
+        int numCols = in.readInt();
+        for (int i = 0; i < numCols; i++)
+        {
+            var col = new Column();
+            col.width = readLength(in);
+            cols.add(col);
+        }
 
-        boolean anyChanged = conditionResult != oldValue;
-        for(var row : rows)
+        int numRows = in.readInt();
+        for (int i = 0; i < numRows; i++)
         {
-            for(var cell : row.cells)
+            var row = new Row();
+            row.height = readLength(in);
+            int numCells = in.readInt();
+            for (int j = 0; j < numCells; j++)
             {
-                if (cell.content != null)
-                    anyChanged |= cell.content.reevaluateConditions(ctx);
+                var cell = new Cell();
+                cell.colspan = in.readInt();
+                cell.content = in.readElement();
+                row.cells.add(cell);
             }
+            rows.add(row);
+        }
+    }
+
+    private static void writeLength(BookCache.Output out, @Nullable Length length) throws IOException
+    {
+        out.writeBoolean(length != null);
+        if (length != null)
+        {
+            out.writeInt(length.value());
+            out.writeUTF(length.unit());
         }
+    }
 
-        return anyChanged;
+    @Nullable
+    private static Length readLength(BookCache.Input in) throws IOException
+    {
+        if (!in.readBoolean())
+            return null;
+        return new Length(in.readInt(), in.readUTF());
+    }
+
+    @Override
+    public String toString(boolean complete)
+    {
+        // TODO: Complete mode
+        return "<grid ...></grid>";
     }
 
     @Override
@@ -288,6 +347,48 @@ public class ElementGrid extends Element
         }
     }
 
+    // Cells are laid out whatever their condition says, so only their contents are pruned.
+    @Override
+    public void pruneStaticConditions()
+    {
+        super.pruneStaticConditions();
+        for(var row : rows)
+        {
+            for(var cell : row.cells)
+            {
+                if (cell.content != null)
+                    cell.content.pruneStaticConditions();
+            }
+        }
+    }
+
+    @Override
+    public void indexConditions(ConditionTable table, int chapter)
+    {
+        super.indexConditions(table, chapter);
+        for(var row : rows)
+        {
+            for(var cell : row.cells)
+            {
+                if (cell.content != null)
+                    cell.content.indexConditions(table, chapter);
+            }
+        }
+    }
+
+    @Override
+    public void findLinks(List<LinkContext> links)
+    {
+        for(var row : rows)
+        {
+            for(var cell : row.cells)
+            {
+                if (cell.content != null)
+                    cell.content.findLinks(links);
+            }
+        }
+    }
+
     @Override
     public Element copy()
     {
@@ -1,16 +1,16 @@
 package dev.gigaherz.guidebook.guidebook.elements;
 
 import dev.gigaherz.guidebook.guidebook.IBookGraphics;
-import dev.gigaherz.guidebook.guidebook.book.IParseable;
-import dev.gigaherz.guidebook.guidebook.book.ParsingContext;
+import dev.gigaherz.guidebook.guidebook.book.AttributeSchema;
+import dev.gigaherz.guidebook.guidebook.book.BookCache;
 import dev.gigaherz.guidebook.guidebook.drawing.VisualElement;
 import dev.gigaherz.guidebook.guidebook.drawing.VisualImage;
 import dev.gigaherz.guidebook.guidebook.util.Rect;
 import dev.gigaherz.guidebook.guidebook.util.Size;
 import net.minecraft.client.resources.model.Material;
 import net.minecraft.resources.ResourceLocation;
-import org.w3c.dom.NamedNodeMap;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -25,6 +25,15 @@ public class ElementImage extends ElementInline
 
     public float scale = 1.0f;
 
+    public static final AttributeSchema<ElementImage> ATTRIBUTES = AttributeSchema.<ElementImage>builder(Element.ATTRIBUTES)
+            .intAttribute("tx", (e, v) -> e.tx = v)
+            .intAttribute("ty", (e, v) -> e.ty = v)
+            .intAttribute("tw", (e, v) -> e.tw = v)
+            .intAttribute("th", (e, v) -> e.th = v)
+            .resourceLocationAttribute("src", (e, v) -> e.textureLocation = v)
+            .floatAttribute("scale", (e, v) -> e.scale = v)
+            .build();
+
     public ElementImage(boolean isFirstElement, boolean isLastElement)
     {
         super(isFirstElement, isLastElement);
@@ -67,16 +76,33 @@ public class ElementImage extends ElementInline
     }
 
     @Override
-    public void parse(ParsingContext context, NamedNodeMap attributes)
+    public AttributeSchema<? extends Element> getAttributeSchema()
     {
-        super.parse(context, attributes);
-
-        tx = IParseable.getAttribute(attributes, "tx", tx);
-        ty = IParseable.getAttribute(attributes, "ty", ty);
-        tw = IParseable.getAttribute(attributes, "tw", tw);
-        th = IParseable.getAttribute(attributes, "th", th);
-        textureLocation = IParseable.getAttribute(attributes, "src", textureLocation);
-        scale = IParseable.getAttribute(attributes, "scale", scale);
+        return ATTRIBUTES;
+    }
+
+    @Override
+    public void writeCache(BookCache.Output out) throws IOException
+    {
+        super.writeCache(out);
+        out.writeResourceLocation(textureLocation);
+        out.writeInt(tx);
+        out.writeInt(ty);
+        out.writeInt(tw);
+        out.writeInt(th);
+        out.writeFloat(scale);
+    }
+
+    @Override
+    public void readCache(BookCache.Input in) throws IOException
+    {
+        super.readCache(in);
+        textureLocation = in.readResourceLocation();
+        tx = in.readInt();
+        ty = in.readInt();
+        tw = in.readInt();
+        th = in.readInt();
+        scale = in.readFloat();
     }
 
     @Override
@@ -86,6 +112,12 @@ public class ElementImage extends ElementInline
         return String.format("<img src=\"%s\" .../>", textureLocation);
     }
 
+    @Override
+    public boolean isShareable()
+    {
+        return condition == null;
+    }
+
     @Override
     public ElementInline copy()
     {
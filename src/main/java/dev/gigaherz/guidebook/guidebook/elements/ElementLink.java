@@ -2,6 +2,7 @@ package dev.gigaherz.guidebook.guidebook.elements;
 
 import com.google.common.collect.Lists;
 import dev.gigaherz.guidebook.guidebook.IBookGraphics;
+import dev.gigaherz.guidebook.guidebook.book.BookCache;
 import dev.gigaherz.guidebook.guidebook.book.BookDocumentParser;
 import dev.gigaherz.guidebook.guidebook.book.ParsingContext;
 import dev.gigaherz.guidebook.guidebook.book.SectionRef;
@@ -12,6 +13,7 @@ import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -70,6 +72,20 @@ public class ElementLink extends ElementSpan
         }
     }
 
+    @Override
+    public void findLinks(List<LinkContext> links)
+    {
+        links.add(ctx);
+        super.findLinks(links);
+    }
+
+    // The link context tracks hovering, so every use needs its own.
+    @Override
+    public boolean isShareable()
+    {
+        return false;
+    }
+
     @Override
     public TextStyle childStyle(ParsingContext context, NamedNodeMap attributes, TextStyle defaultStyle)
     {
@@ -84,6 +100,26 @@ public class ElementLink extends ElementSpan
         inlines.addAll(elementList);
     }
 
+    @Override
+    public void writeCache(BookCache.Output out) throws IOException
+    {
+        super.writeCache(out);
+        out.writeNullableString(ctx.textTarget);
+        out.writeNullableString(ctx.textAction);
+        out.writeSectionRef(ctx.target);
+        out.writeInt(ctx.colorHover);
+    }
+
+    @Override
+    public void readCache(BookCache.Input in) throws IOException
+    {
+        super.readCache(in);
+        ctx.textTarget = in.readNullableString();
+        ctx.textAction = in.readNullableString();
+        ctx.target = in.readSectionRef();
+        ctx.colorHover = in.readInt();
+    }
+
     @Override
     public ElementInline copy()
     {
@@ -3,9 +3,11 @@ package dev.gigaherz.guidebook.guidebook.elements;
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Ints;
 import dev.gigaherz.guidebook.guidebook.IBookGraphics;
+import dev.gigaherz.guidebook.guidebook.book.AttributeSchema;
+import dev.gigaherz.guidebook.guidebook.book.BookCache;
 import dev.gigaherz.guidebook.guidebook.book.BookDocumentParser;
 import dev.gigaherz.guidebook.guidebook.book.ParsingContext;
-import dev.gigaherz.guidebook.guidebook.conditions.ConditionContext;
+import dev.gigaherz.guidebook.guidebook.conditions.ConditionTable;
 import dev.gigaherz.guidebook.guidebook.drawing.VisualElement;
 import dev.gigaherz.guidebook.guidebook.drawing.VisualPanel;
 import dev.gigaherz.guidebook.guidebook.templates.TemplateDefinition;
@@ -13,11 +15,10 @@ import dev.gigaherz.guidebook.guidebook.util.Point2I;
 import dev.gigaherz.guidebook.guidebook.util.Rect;
 import dev.gigaherz.guidebook.guidebook.util.Size;
 import net.minecraft.client.resources.model.Material;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -30,6 +31,28 @@ public class ElementPanel extends Element
     public Integer space;
     public PanelMode mode = PanelMode.DEFAULT;
 
+    public static final AttributeSchema<ElementPanel> ATTRIBUTES = AttributeSchema.<ElementPanel>builder(Element.ATTRIBUTES)
+            .stringAttribute("height", (e, t) -> {
+                if (t.endsWith("%"))
+                {
+                    e.asPercent = true;
+                    t = t.substring(0, t.length() - 1);
+                }
+
+                e.space = Ints.tryParse(t);
+            })
+            .stringAttribute("mode", (e, t) -> {
+                try
+                {
+                    e.mode = PanelMode.valueOf(t.toUpperCase());
+                }
+                catch (IllegalArgumentException ex)
+                {
+                    e.mode = PanelMode.DEFAULT;
+                }
+            })
+            .build();
+
     enum PanelMode
     {
         DEFAULT,
@@ -47,36 +70,9 @@ public class ElementPanel extends Element
     }
 
     @Override
-    public void parse(ParsingContext context, NamedNodeMap attributes)
+    public AttributeSchema<? extends Element> getAttributeSchema()
     {
-        super.parse(context, attributes);
-
-        Node attr = attributes.getNamedItem("height");
-        if (attr != null)
-        {
-            String t = attr.getTextContent();
-            if (t.endsWith("%"))
-            {
-                asPercent = true;
-                t = t.substring(0, t.length() - 1);
-            }
-
-            space = Ints.tryParse(t);
-        }
-
-        attr = attributes.getNamedItem("mode");
-        if (attr != null)
-        {
-            String t = attr.getTextContent();
-            try
-            {
-                mode = PanelMode.valueOf(t.toUpperCase());
-            }
-            catch (IllegalArgumentException e)
-            {
-                mode = PanelMode.DEFAULT;
-            }
-        }
+        return ATTRIBUTES;
     }
 
     @Override
@@ -86,25 +82,30 @@ public class ElementPanel extends Element
     }
 
     @Override
-    public String toString(boolean complete)
+    public void writeCache(BookCache.Output out) throws IOException
     {
-        // TODO: Complete mode
-        return "<panel ...>" + innerElements.stream().map(Object::toString).collect(Collectors.joining()) + "</panel>";
+        super.writeCache(out);
+        out.writeBoolean(asPercent);
+        out.writeNullableInt(space);
+        out.writeEnum(mode);
+        out.writeElements(innerElements);
     }
 
     @Override
-    public boolean reevaluateConditions(ConditionContext ctx)
+    public void readCache(BookCache.Input in) throws IOException
     {
-        boolean oldValue = conditionResult;
-        conditionResult = condition == null || condition.test(ctx);
-
-        boolean anyChanged = conditionResult != oldValue;
-        for (Element element : innerElements)
-        {
-            anyChanged |= element.reevaluateConditions(ctx);
-        }
+        super.readCache(in);
+        asPercent = in.readBoolean();
+        space = in.readNullableInt();
+        mode = in.readEnum(PanelMode.class);
+        in.readElements(innerElements, Element.class);
+    }
 
-        return anyChanged;
+    @Override
+    public String toString(boolean complete)
+    {
+        // TODO: Complete mode
+        return "<panel ...>" + innerElements.stream().map(Object::toString).collect(Collectors.joining()) + "</panel>";
     }
 
     @Override
@@ -120,7 +121,7 @@ public class ElementPanel extends Element
         {
             for (Element element : innerElements)
             {
-                if (element.conditionResult)
+                if (nav.getBook().isConditionMet(element.conditionIndex))
                 {
                     element.reflow(visuals, nav, adjustedBounds, pageBounds);
                 }
@@ -131,7 +132,7 @@ public class ElementPanel extends Element
         {
             for (Element element : innerElements)
             {
-                if (element.conditionResult)
+                if (nav.getBook().isConditionMet(element.conditionIndex))
                 {
                     Point2I tempPos = new Point2I(adjustedPosition.x(), top);
                     Size tempSize = new Size(adjustedBounds.size.width(), adjustedBounds.size.height() - (top - adjustedPosition.y()));
@@ -176,6 +177,32 @@ public class ElementPanel extends Element
         }
     }
 
+    @Override
+    public void pruneStaticConditions()
+    {
+        super.pruneStaticConditions();
+        pruneStaticConditions(innerElements);
+    }
+
+    @Override
+    public void indexConditions(ConditionTable table, int chapter)
+    {
+        super.indexConditions(table, chapter);
+        for (Element child : innerElements)
+        {
+            child.indexConditions(table, chapter);
+        }
+    }
+
+    @Override
+    public void findLinks(List<LinkContext> links)
+    {
+        for (Element child : innerElements)
+        {
+            child.findLinks(links);
+        }
+    }
+
     @Override
     public Element copy()
     {
@@ -192,19 +219,30 @@ public class ElementPanel extends Element
         if (innerElements.size() == 0)
             return null;
 
-        ElementPanel panel = super.copy(new ElementPanel());
-        panel.space = space;
-        panel.asPercent = asPercent;
+        List<Element> children = Lists.newArrayList();
+        boolean changed = false;
         for (Element element : innerElements)
         {
             Element t = element.applyTemplate(context, sourceElements);
             if (t != null)
-                panel.innerElements.add(t);
+                children.add(t);
+            changed |= t != element;
         }
 
-        if (panel.innerElements.size() == 0)
+        if (children.size() == 0)
             return null;
 
+        // Nothing below this panel depends on the template's contents, so it can be shared as a whole.
+        if (!changed && condition == null)
+        {
+            context.countSharedElement();
+            return this;
+        }
+
+        ElementPanel panel = super.copy(new ElementPanel());
+        panel.space = space;
+        panel.asPercent = asPercent;
+        panel.innerElements.addAll(children);
         return panel;
     }
 
@@ -3,10 +3,11 @@ package dev.gigaherz.guidebook.guidebook.elements;
 import com.google.common.collect.Lists;
 import dev.gigaherz.guidebook.GuidebookMod;
 import dev.gigaherz.guidebook.guidebook.IBookGraphics;
+import dev.gigaherz.guidebook.guidebook.book.AttributeSchema;
+import dev.gigaherz.guidebook.guidebook.book.BookCache;
 import dev.gigaherz.guidebook.guidebook.book.BookDocumentParser;
-import dev.gigaherz.guidebook.guidebook.book.IParseable;
 import dev.gigaherz.guidebook.guidebook.book.ParsingContext;
-import dev.gigaherz.guidebook.guidebook.conditions.ConditionContext;
+import dev.gigaherz.guidebook.guidebook.conditions.ConditionTable;
 import dev.gigaherz.guidebook.guidebook.drawing.VisualElement;
 import dev.gigaherz.guidebook.guidebook.templates.TemplateDefinition;
 import dev.gigaherz.guidebook.guidebook.util.Point2I;
@@ -17,6 +18,7 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -28,21 +30,38 @@ public class ElementParagraph extends Element
     public int indentFirstLine = 0; // First line?
     public int space = 2;
 
+    public static final AttributeSchema<ElementParagraph> ATTRIBUTES = AttributeSchema.<ElementParagraph>builder(Element.ATTRIBUTES)
+            .enumAttribute("align", Alignment.class, (e, v) -> e.alignment = v)
+            .intAttribute("indent", (e, v) -> e.indent = v)
+            .intAttribute("space", (e, v) -> e.space = v)
+            .build();
+
     public final List<ElementInline> inlines = Lists.newArrayList();
 
     @Override
-    public boolean reevaluateConditions(ConditionContext ctx)
+    public void pruneStaticConditions()
     {
-        boolean oldValue = conditionResult;
-        conditionResult = condition == null || condition.test(ctx);
+        super.pruneStaticConditions();
+        pruneStaticConditions(inlines);
+    }
 
-        boolean anyChanged = conditionResult != oldValue;
+    @Override
+    public void indexConditions(ConditionTable table, int chapter)
+    {
+        super.indexConditions(table, chapter);
         for (Element element : inlines)
         {
-            anyChanged |= element.reevaluateConditions(ctx);
+            element.indexConditions(table, chapter);
         }
+    }
 
-        return anyChanged;
+    @Override
+    public void findLinks(List<LinkContext> links)
+    {
+        for (Element element : inlines)
+        {
+            element.findLinks(links);
+        }
     }
 
     @Override
@@ -177,13 +196,9 @@ public class ElementParagraph extends Element
     }
 
     @Override
-    public void parse(ParsingContext context, NamedNodeMap attributes)
+    public AttributeSchema<? extends Element> getAttributeSchema()
     {
-        super.parse(context, attributes);
-
-        alignment = IParseable.getAttribute(attributes, "align", alignment, Alignment.class);
-        indent = IParseable.getAttribute(attributes, "indent", indent);
-        space = IParseable.getAttribute(attributes, "space", space);
+        return ATTRIBUTES;
     }
 
     @Override
@@ -211,6 +226,28 @@ public class ElementParagraph extends Element
         }
     }
 
+    @Override
+    public void writeCache(BookCache.Output out) throws IOException
+    {
+        super.writeCache(out);
+        out.writeEnum(alignment);
+        out.writeInt(indent);
+        out.writeInt(indentFirstLine);
+        out.writeInt(space);
+        out.writeElements(inlines);
+    }
+
+    @Override
+    public void readCache(BookCache.Input in) throws IOException
+    {
+        super.readCache(in);
+        alignment = in.readEnum(Alignment.class);
+        indent = in.readInt();
+        indentFirstLine = in.readInt();
+        space = in.readInt();
+        in.readElements(inlines, ElementInline.class);
+    }
+
     @Override
     public String toString(boolean complete)
     {
@@ -237,20 +274,31 @@ public class ElementParagraph extends Element
         if (inlines.size() == 0)
             return null;
 
-        ElementParagraph paragraph = super.copy(new ElementParagraph());
-        paragraph.alignment = alignment;
-        paragraph.indent = indent;
-        paragraph.space = space;
+        List<ElementInline> children = Lists.newArrayList();
+        boolean changed = false;
         for (ElementInline element : inlines)
         {
             Element t = element.applyTemplate(context, sourceElements);
             if (t instanceof ElementInline)
-                paragraph.inlines.add((ElementInline) t);
+                children.add((ElementInline) t);
+            changed |= t != element;
         }
 
-        if (paragraph.inlines.size() == 0)
+        if (children.size() == 0)
             return null;
 
+        // Nothing in this paragraph depends on the template's contents, so it can be shared as a whole.
+        if (!changed && condition == null)
+        {
+            context.countSharedElement();
+            return this;
+        }
+
+        ElementParagraph paragraph = super.copy(new ElementParagraph());
+        paragraph.alignment = alignment;
+        paragraph.indent = indent;
+        paragraph.space = space;
+        paragraph.inlines.addAll(children);
         return paragraph;
     }
 
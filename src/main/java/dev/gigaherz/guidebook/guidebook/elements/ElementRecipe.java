@@ -3,6 +3,7 @@ package dev.gigaherz.guidebook.guidebook.elements;
 import com.google.common.primitives.Ints;
 import dev.gigaherz.guidebook.GuidebookMod;
 import dev.gigaherz.guidebook.guidebook.IBookGraphics;
+import dev.gigaherz.guidebook.guidebook.book.BookCache;
 import dev.gigaherz.guidebook.guidebook.book.BookDocumentParser;
 import dev.gigaherz.guidebook.guidebook.book.ParsingContext;
 import dev.gigaherz.guidebook.guidebook.drawing.VisualElement;
@@ -21,6 +22,7 @@ import org.w3c.dom.NodeList;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -170,6 +172,28 @@ public class ElementRecipe extends Element
         }
     }
 
+    @Override
+    public void writeCache(BookCache.Output out) throws IOException
+    {
+        super.writeCache(out);
+        out.writeResourceLocation(recipeProviderKey);
+        out.writeResourceLocation(recipeKey);
+        out.writeElement(recipeOutput);
+        out.writeInt(recipeIndex);
+        out.writeInt(indent);
+    }
+
+    @Override
+    public void readCache(BookCache.Input in) throws IOException
+    {
+        super.readCache(in);
+        recipeProviderKey = in.readResourceLocation();
+        recipeKey = in.readResourceLocation();
+        recipeOutput = in.readElement();
+        recipeIndex = in.readInt();
+        indent = in.readInt();
+    }
+
     @Override
     public String toString(boolean complete)
     {
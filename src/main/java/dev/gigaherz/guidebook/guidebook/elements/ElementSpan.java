@@ -2,13 +2,16 @@ package dev.gigaherz.guidebook.guidebook.elements;
 
 import com.google.common.collect.Lists;
 import dev.gigaherz.guidebook.guidebook.IBookGraphics;
+import dev.gigaherz.guidebook.guidebook.book.BookCache;
 import dev.gigaherz.guidebook.guidebook.book.BookDocumentParser;
 import dev.gigaherz.guidebook.guidebook.book.ParsingContext;
+import dev.gigaherz.guidebook.guidebook.conditions.ConditionTable;
 import dev.gigaherz.guidebook.guidebook.drawing.VisualElement;
 import dev.gigaherz.guidebook.guidebook.templates.TemplateDefinition;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.NodeList;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -44,6 +47,20 @@ public class ElementSpan extends ElementInline
         inlines.addAll(elementList);
     }
 
+    @Override
+    public void writeCache(BookCache.Output out) throws IOException
+    {
+        super.writeCache(out);
+        out.writeElements(inlines);
+    }
+
+    @Override
+    public void readCache(BookCache.Input in) throws IOException
+    {
+        super.readCache(in);
+        in.readElements(inlines, ElementInline.class);
+    }
+
     @Override
     public String toString(boolean complete)
     {
@@ -51,6 +68,38 @@ public class ElementSpan extends ElementInline
         return "<span ...>" + inlines.stream().map(Object::toString).collect(Collectors.joining()) + "</span>";
     }
 
+    @Override
+    public void pruneStaticConditions()
+    {
+        super.pruneStaticConditions();
+        pruneStaticConditions(inlines);
+    }
+
+    @Override
+    public void indexConditions(ConditionTable table, int chapter)
+    {
+        super.indexConditions(table, chapter);
+        for (ElementInline run : inlines)
+        {
+            run.indexConditions(table, chapter);
+        }
+    }
+
+    @Override
+    public void findLinks(List<LinkContext> links)
+    {
+        for (ElementInline run : inlines)
+        {
+            run.findLinks(links);
+        }
+    }
+
+    @Override
+    public boolean isShareable()
+    {
+        return condition == null && inlines.stream().allMatch(Element::isShareable);
+    }
+
     @Override
     public ElementInline copy()
     {
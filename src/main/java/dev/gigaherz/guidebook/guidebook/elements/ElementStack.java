@@ -4,6 +4,7 @@ import com.google.common.primitives.Ints;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import dev.gigaherz.guidebook.GuidebookMod;
 import dev.gigaherz.guidebook.guidebook.IBookGraphics;
+import dev.gigaherz.guidebook.guidebook.book.BookCache;
 import dev.gigaherz.guidebook.guidebook.book.IParseable;
 import dev.gigaherz.guidebook.guidebook.book.ParsingContext;
 import dev.gigaherz.guidebook.guidebook.drawing.VisualElement;
@@ -23,6 +24,8 @@ import net.minecraftforge.registries.tags.ITag;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 
+import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 
@@ -32,6 +35,12 @@ public class ElementStack extends ElementInline
 
     public float scale = 1.0f;
 
+    // Tag contents can change between launches, so the compiled book cache stores the tag and resolves it again.
+    @Nullable
+    private TagKey<Item> tag;
+    private int tagStackSize = 1;
+    private int tagStacks = 0;
+
     public ElementStack(boolean isFirstElement, boolean isLastElement)
     {
         super(isFirstElement, isLastElement);
@@ -130,17 +139,63 @@ public class ElementStack extends ElementInline
         attr = attributes.getNamedItem("tag");
         if (attr != null)
         {
-            TagKey<Item> tagKey = TagKey.create(Registry.ITEM_REGISTRY, new ResourceLocation(attr.getTextContent()));
-            ITag<Item> tag = ForgeRegistries.ITEMS.tags().getTag(tagKey);
+            tag = TagKey.create(Registry.ITEM_REGISTRY, new ResourceLocation(attr.getTextContent()));
+            tagStackSize = stackSize;
+            addTagStacks();
+        }
+    }
 
-            if (!tag.isEmpty())
-            {
-                for (Item item : tag)
-                {
-                    ItemStack stack = new ItemStack(item, stackSize);
-                    stacks.add(stack);
-                }
-            }
+    private void addTagStacks()
+    {
+        ITag<Item> items = ForgeRegistries.ITEMS.tags().getTag(tag);
+
+        tagStacks = 0;
+        for (Item item : items)
+        {
+            ItemStack stack = new ItemStack(item, tagStackSize);
+            stacks.add(stack);
+            tagStacks++;
+        }
+    }
+
+    @Override
+    public void writeCache(BookCache.Output out) throws IOException
+    {
+        super.writeCache(out);
+        out.writeFloat(scale);
+
+        int explicitStacks = stacks.size() - tagStacks;
+        out.writeInt(explicitStacks);
+        for (int i = 0; i < explicitStacks; i++)
+        {
+            out.writeItemStack(stacks.get(i));
+        }
+
+        out.writeResourceLocation(tag != null ? tag.location() : null);
+        out.writeInt(tagStackSize);
+    }
+
+    @Override
+    public void readCache(BookCache.Input in) throws IOException
+    {
+        super.readCache(in);
+        scale = in.readFloat();
+
+        int explicitStacks = in.readInt();
+        for (int i = 0; i < explicitStacks; i++)
+        {
+            ItemStack stack = in.readItemStack();
+            // Items that stopped existing are skipped, same as the parser does.
+            if (!stack.isEmpty())
+                stacks.add(stack);
+        }
+
+        ResourceLocation tagLocation = in.readResourceLocation();
+        tagStackSize = in.readInt();
+        if (tagLocation != null)
+        {
+            tag = TagKey.create(Registry.ITEM_REGISTRY, tagLocation);
+            addTagStacks();
         }
     }
 
@@ -156,6 +211,9 @@ public class ElementStack extends ElementInline
     {
         ElementStack newStack = super.copy(new ElementStack(isFirstElement, isLastElement));
         newStack.scale = scale;
+        newStack.tag = tag;
+        newStack.tagStackSize = tagStackSize;
+        newStack.tagStacks = tagStacks;
         for (ItemStack stack : stacks)
         {
             newStack.stacks.add(stack.copy());
@@ -1,8 +1,9 @@
 package dev.gigaherz.guidebook.guidebook.elements;
 
 import dev.gigaherz.guidebook.guidebook.IBookGraphics;
-import dev.gigaherz.guidebook.guidebook.book.IParseable;
-import dev.gigaherz.guidebook.guidebook.book.ParsingContext;
+import dev.gigaherz.guidebook.guidebook.book.AttributeSchema;
+import dev.gigaherz.guidebook.guidebook.book.BookCache;
+import dev.gigaherz.guidebook.guidebook.client.LineBreaker;
 import dev.gigaherz.guidebook.guidebook.drawing.VisualElement;
 import dev.gigaherz.guidebook.guidebook.drawing.VisualText;
 import dev.gigaherz.guidebook.guidebook.util.Color;
@@ -11,13 +12,14 @@ import net.minecraft.network.chat.FormattedText;
 import net.minecraft.network.chat.Component;
 import net.minecraft.network.chat.MutableComponent;
 import net.minecraft.resources.ResourceLocation;
-import org.w3c.dom.NamedNodeMap;
 
+import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.List;
 
 public class ElementText extends ElementInline
 {
-    public final String text;
+    public String text;
     public Color color;
     public boolean bold;
     public boolean italics;
@@ -28,6 +30,14 @@ public class ElementText extends ElementInline
 
     public float scale;
 
+    // Only depends on the contents of this element, so it stays valid when the element is shared between template instances.
+    @Nullable
+    private LineBreaker.ShapedText shaped;
+
+    public static final AttributeSchema<ElementText> ATTRIBUTES = AttributeSchema.<ElementText>builder(Element.ATTRIBUTES)
+            .floatAttribute("scale", (e, v) -> e.scale = v)
+            .build();
+
     public ElementText(String text, boolean isFirstElement, boolean isLastElement, TextStyle style)
     {
         super(isFirstElement, isLastElement);
@@ -70,7 +80,12 @@ public class ElementText extends ElementInline
     @Override
     public List<VisualElement> measure(IBookGraphics nav, int width, int firstLineWidth)
     {
-        List<VisualElement> elements = nav.measure(getStringWithFormat(getActualString()), width, firstLineWidth, scale, position, baseline, verticalAlignment);
+        // Shaping doesn't depend on the width, so laying out again after a resize only has to find where the lines break.
+        if (shaped == null || !shaped.isCurrent())
+        {
+            shaped = nav.shape(getStringWithFormat(getActualString()));
+        }
+        List<VisualElement> elements = nav.measure(shaped, width, firstLineWidth, scale, position, baseline, verticalAlignment);
         for (VisualElement text : elements)
         {
             if (text instanceof VisualText visualText)
@@ -95,10 +110,39 @@ public class ElementText extends ElementInline
     }
 
     @Override
-    public void parse(ParsingContext context, NamedNodeMap attributes)
+    public AttributeSchema<? extends Element> getAttributeSchema()
+    {
+        return ATTRIBUTES;
+    }
+
+    @Override
+    public void writeCache(BookCache.Output out) throws IOException
     {
-        super.parse(context, attributes);
-        scale = IParseable.getAttribute(attributes, "scale", scale);
+        super.writeCache(out);
+        out.writeUTF(text);
+        out.writeInt(color.argb());
+        out.writeBoolean(bold);
+        out.writeBoolean(italics);
+        out.writeBoolean(underline);
+        out.writeBoolean(strikethrough);
+        out.writeBoolean(obfuscated);
+        out.writeResourceLocation(font);
+        out.writeFloat(scale);
+    }
+
+    @Override
+    public void readCache(BookCache.Input in) throws IOException
+    {
+        super.readCache(in);
+        text = in.readUTF();
+        color = Color.fromARGB(in.readInt());
+        bold = in.readBoolean();
+        italics = in.readBoolean();
+        underline = in.readBoolean();
+        strikethrough = in.readBoolean();
+        obfuscated = in.readBoolean();
+        font = in.readResourceLocation();
+        scale = in.readFloat();
     }
 
     @Override
@@ -107,6 +151,12 @@ public class ElementText extends ElementInline
         return text;
     }
 
+    @Override
+    public boolean isShareable()
+    {
+        return condition == null;
+    }
+
     @Override
     public ElementInline copy()
     {
@@ -121,13 +171,82 @@ public class ElementText extends ElementInline
     }
 
 
+    /**
+     * Removes line breaks, collapses each run of spaces and tabs into a single space, and optionally drops the leading and trailing space.
+     * Text that is already compact, which is the common case, is returned as-is without allocating.
+     */
     public static String compactString(String text, boolean trimLeft, boolean trimRight)
     {
         if (text == null)
             return null;
-        String temp = text.replaceAll("[\n\r]+", "").replaceAll("[ \t]+", " ");
-        if (trimLeft) temp = temp.replaceAll("^[ \t]+", "");
-        if (trimRight) temp = temp.replaceAll("[ \t]+$", "");
-        return temp;
+        if (isCompact(text, trimLeft, trimRight))
+            return text;
+
+        char[] out = new char[text.length()];
+        int n = 0;
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r')
+                continue;
+            if (c == ' ' || c == '\t')
+            {
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace)
+            {
+                if (n > 0 || !trimLeft)
+                    out[n++] = ' ';
+                pendingSpace = false;
+            }
+            out[n++] = c;
+        }
+        if (pendingSpace && !trimRight && (n > 0 || !trimLeft))
+            out[n++] = ' ';
+        return new String(out, 0, n);
+    }
+
+    private static boolean isCompact(String text, boolean trimLeft, boolean trimRight)
+    {
+        int length = text.length();
+        if (length == 0)
+            return true;
+        if ((trimLeft && text.charAt(0) == ' ') || (trimRight && text.charAt(length - 1) == ' '))
+            return false;
+
+        boolean space = false;
+        for (int i = 0; i < length; i++)
+        {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\t')
+                return false;
+            if (c == ' ')
+            {
+                if (space)
+                    return false;
+                space = true;
+            }
+            else
+            {
+                space = false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the text has nothing but spaces, tabs and line breaks
+     */
+    public static boolean isWhitespace(String text)
+    {
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\r' && c != '\n')
+                return false;
+        }
+        return true;
     }
 }
@@ -1,6 +1,6 @@
 package dev.gigaherz.guidebook.guidebook.elements;
 
-import dev.gigaherz.guidebook.guidebook.book.IParseable;
+import dev.gigaherz.guidebook.guidebook.book.AttributeSchema;
 import dev.gigaherz.guidebook.guidebook.util.Color;
 import net.minecraft.network.chat.Style;
 import net.minecraft.resources.ResourceLocation;
@@ -13,22 +13,60 @@ public record TextStyle(Color color, boolean bold, boolean italics, boolean unde
     public static final TextStyle LINK = new TextStyle(Color.fromARGB(0xFF7766cc), false, false, true, false, false, Style.DEFAULT_FONT, 1.0f);
     public static final TextStyle ERROR = new TextStyle(Color.fromARGB(0xFFcc7766), false, false, true, false, false, Style.DEFAULT_FONT, 1.0f);
 
+    private static final AttributeSchema<Builder> ATTRIBUTES = AttributeSchema.<Builder>builder()
+            .colorAttribute("color", (s, v) -> s.color = v)
+            .booleanAttribute("bold", (s, v) -> s.bold = v)
+            .booleanAttribute("italics", (s, v) -> s.italics = v)
+            .booleanAttribute("underline", (s, v) -> s.underline = v)
+            .booleanAttribute("strikethrough", (s, v) -> s.strikethrough = v)
+            .booleanAttribute("obfuscated", (s, v) -> s.obfuscated = v)
+            .resourceLocationAttribute("font", (s, v) -> s.font = v)
+            .floatAttribute("scale", (s, v) -> s.scale = v)
+            .build();
+
     public static TextStyle parse(NamedNodeMap attributes, TextStyle defaults)
     {
         if (defaults == null)
         {
             defaults = DEFAULT;
         }
-        Color color1 = IParseable.getAttribute(attributes, "color", defaults.color);
-        boolean bold1 = IParseable.getAttribute(attributes, "bold", defaults.bold);
-        boolean italics1 = IParseable.getAttribute(attributes, "italics", defaults.italics);
-        boolean underline1 = IParseable.getAttribute(attributes, "underline", defaults.underline);
-        boolean strikethrough1 = IParseable.getAttribute(attributes, "strikethrough", defaults.strikethrough);
-        boolean obfuscated1 = IParseable.getAttribute(attributes, "obfuscated", defaults.obfuscated);
-        ResourceLocation font1 = IParseable.getAttribute(attributes, "font", defaults.font);
-        float scale1 = IParseable.getAttribute(attributes, "scale", defaults.scale);
-
-        return new TextStyle(color1, bold1, italics1, underline1, strikethrough1, obfuscated1, font1, scale1);
+        if (attributes.getLength() == 0)
+        {
+            return defaults;
+        }
+
+        Builder style = new Builder(defaults);
+        ATTRIBUTES.bind(null, style, attributes);
+        return style.build();
+    }
+
+    private static class Builder
+    {
+        Color color;
+        boolean bold;
+        boolean italics;
+        boolean underline;
+        boolean strikethrough;
+        boolean obfuscated;
+        ResourceLocation font;
+        float scale;
+
+        Builder(TextStyle defaults)
+        {
+            color = defaults.color;
+            bold = defaults.bold;
+            italics = defaults.italics;
+            underline = defaults.underline;
+            strikethrough = defaults.strikethrough;
+            obfuscated = defaults.obfuscated;
+            font = defaults.font;
+            scale = defaults.scale;
+        }
+
+        TextStyle build()
+        {
+            return new TextStyle(color, bold, italics, underline, strikethrough, obfuscated, font, scale);
+        }
     }
 
     @Override
@@ -72,7 +72,14 @@ public class TemplateElement extends ElementInline
     {
         if (index >= sourceElements.size())
             return null;
-        Element e = sourceElements.get(index).copy();
+        Element source = sourceElements.get(index);
+        // The element is only copied when the placeholder has attributes to apply over it.
+        if (attributes.getLength() == 0 && source.isShareable())
+        {
+            context.countSharedElement();
+            return source;
+        }
+        Element e = source.copy();
         e.parse(context, attributes);
         return e;
     }
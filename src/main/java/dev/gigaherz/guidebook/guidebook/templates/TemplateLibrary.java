@@ -1,10 +1,12 @@
 package dev.gigaherz.guidebook.guidebook.templates;
 
 import com.google.common.collect.Maps;
+import dev.gigaherz.guidebook.guidebook.book.BookDependencies;
 import dev.gigaherz.guidebook.guidebook.book.BookDocument;
 import dev.gigaherz.guidebook.guidebook.BookRegistry;
 import dev.gigaherz.guidebook.guidebook.book.BookDocumentParser;
 import dev.gigaherz.guidebook.guidebook.book.ParsingContext;
+import dev.gigaherz.guidebook.guidebook.book.XmlParsers;
 import dev.gigaherz.guidebook.guidebook.conditions.ConditionContext;
 import dev.gigaherz.guidebook.guidebook.elements.TextStyle;
 import net.minecraft.client.Minecraft;
@@ -16,22 +18,24 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.*;
+import java.util.Collection;
 import java.util.Map;
 import java.util.function.Predicate;
 
 public class TemplateLibrary
 {
     public final Map<String, TemplateDefinition> templates = Maps.newHashMap();
+    public final BookDependencies dependencies = new BookDependencies();
 
     public void parseLibrary(ParsingContext context, InputStream stream) throws ParserConfigurationException, IOException, SAXException
     {
-        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-        Document doc = dBuilder.parse(stream);
+        Document doc;
+        try (XmlParsers.PooledDocumentBuilder builder = XmlParsers.borrowDocumentBuilder())
+        {
+            doc = builder.builder().parse(stream);
+        }
 
         doc.getDocumentElement().normalize();
 
@@ -76,17 +80,34 @@ public class TemplateLibrary
             {
                 return null;
             }
+
+            @Override
+            public BookDependencies dependencies()
+            {
+                return dependencies;
+            }
         };
         BookDocumentParser.parseTemplateDefinition(context, templateItem, templates);
     }
 
-    public static Map<String, TemplateLibrary> LIBRARIES = Maps.newHashMap();
+    public static Map<String, TemplateLibrary> LIBRARIES = Maps.newConcurrentMap();
 
     public static void clear()
     {
         LIBRARIES.clear();
     }
 
+    /**
+     * Drops the libraries that were built from any of the given files, so they are parsed again the next time they are used.
+     */
+    public static void invalidate(Collection<ResourceLocation> changed)
+    {
+        LIBRARIES.entrySet().removeIf(entry -> {
+            ResourceLocation location = ResourceLocation.tryParse(entry.getKey());
+            return (location != null && changed.contains(location)) || entry.getValue().dependencies.dependsOn(changed);
+        });
+    }
+
     public static TemplateLibrary get(ParsingContext context, String path, boolean useConfigFolder)
     {
         TemplateLibrary lib = LIBRARIES.get(path);
@@ -0,0 +1,51 @@
+package dev.gigaherz.guidebook.guidebook.util;
+
+/**
+ * A fixed number of integer values, with updates and sums of the values before an index in O(log n) (a Fenwick tree).
+ */
+public class PrefixSumTree
+{
+    private final int[] values;
+    private final int[] tree;
+
+    public PrefixSumTree(int size)
+    {
+        values = new int[size];
+        tree = new int[size + 1];
+    }
+
+    public int size()
+    {
+        return values.length;
+    }
+
+    public int get(int index)
+    {
+        return values[index];
+    }
+
+    public void set(int index, int value)
+    {
+        int delta = value - values[index];
+        if (delta == 0)
+            return;
+        values[index] = value;
+        for (int i = index + 1; i < tree.length; i += i & -i)
+        {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * @return the sum of the values at indices lower than the given one
+     */
+    public int sumBefore(int index)
+    {
+        int sum = 0;
+        for (int i = index; i > 0; i -= i & -i)
+        {
+            sum += tree[i];
+        }
+        return sum;
+    }
+}
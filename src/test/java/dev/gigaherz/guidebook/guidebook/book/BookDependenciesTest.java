@@ -0,0 +1,123 @@
+package dev.gigaherz.guidebook.guidebook.book;
+
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import net.minecraft.resources.ResourceLocation;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SuppressWarnings("UnstableApiUsage")
+public class BookDependenciesTest
+{
+    private static final ResourceLocation TEMPLATES = new ResourceLocation("gbook", "xml/templates.xml");
+    private static final ResourceLocation INCLUDE = new ResourceLocation("gbook", "xml/include.xml");
+
+    private static HashCode hash(String text)
+    {
+        return BookDependencies.hash(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static BookDependencies create()
+    {
+        BookDependencies dependencies = new BookDependencies();
+        dependencies.setRoot(BookDependencies.hashRoot("<book/>".getBytes(StandardCharsets.UTF_8), false));
+        dependencies.addInclude(TEMPLATES, hash("templates"));
+        dependencies.addInclude(INCLUDE, hash("include"));
+        return dependencies;
+    }
+
+    private static Map<ResourceLocation, HashCode> currentIncludes()
+    {
+        Map<ResourceLocation, HashCode> current = Maps.newHashMap();
+        current.put(TEMPLATES, hash("templates"));
+        current.put(INCLUDE, hash("include"));
+        return current;
+    }
+
+    @Test
+    public void upToDateWhenNothingChanged()
+    {
+        BookDependencies dependencies = create();
+        assertTrue(dependencies.isUpToDate(dependencies.getRoot(), currentIncludes()::get));
+    }
+
+    @Test
+    public void outOfDateWhenRootChanged()
+    {
+        BookDependencies dependencies = create();
+        HashCode changedRoot = BookDependencies.hashRoot("<book name=\"changed\"/>".getBytes(StandardCharsets.UTF_8), false);
+        assertFalse(dependencies.isUpToDate(changedRoot, currentIncludes()::get));
+    }
+
+    @Test
+    public void outOfDateWhenIncludeChangedOrMissing()
+    {
+        BookDependencies dependencies = create();
+
+        Map<ResourceLocation, HashCode> changed = currentIncludes();
+        changed.put(INCLUDE, hash("changed include"));
+        assertFalse(dependencies.isUpToDate(dependencies.getRoot(), changed::get));
+
+        Map<ResourceLocation, HashCode> missing = currentIncludes();
+        missing.remove(TEMPLATES);
+        assertFalse(dependencies.isUpToDate(dependencies.getRoot(), missing::get));
+    }
+
+    @Test
+    public void rootHashDependsOnSource()
+    {
+        byte[] data = "<book/>".getBytes(StandardCharsets.UTF_8);
+        assertNotEquals(BookDependencies.hashRoot(data, false), BookDependencies.hashRoot(data, true));
+    }
+
+    @Test
+    public void keepsFirstHashOfEachInclude()
+    {
+        BookDependencies dependencies = create();
+        dependencies.addInclude(INCLUDE, hash("included again later"));
+        assertTrue(dependencies.isUpToDate(dependencies.getRoot(), currentIncludes()::get));
+    }
+
+    @Test
+    public void tellsWhichFilesItDependsOn()
+    {
+        BookDependencies dependencies = create();
+        assertTrue(dependencies.dependsOn(List.of(new ResourceLocation("gbook", "xml/other.xml"), INCLUDE)));
+        assertFalse(dependencies.dependsOn(List.of(new ResourceLocation("gbook", "xml/other.xml"))));
+    }
+
+    @Test
+    public void survivesWriteAndRead() throws IOException
+    {
+        BookDependencies dependencies = create();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        dependencies.write(new DataOutputStream(bytes));
+        BookDependencies read = BookDependencies.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(dependencies.getRoot(), read.getRoot());
+        assertTrue(read.isUpToDate(dependencies.getRoot(), currentIncludes()::get));
+        assertTrue(read.dependsOn(List.of(TEMPLATES)));
+        assertTrue(read.dependsOn(List.of(INCLUDE)));
+
+        Map<ResourceLocation, HashCode> changed = currentIncludes();
+        changed.put(TEMPLATES, hash("changed templates"));
+        assertFalse(read.isUpToDate(dependencies.getRoot(), changed::get));
+    }
+
+    @Test
+    public void needsRootToWrite()
+    {
+        assertThrows(IllegalStateException.class, () -> new BookDependencies().write(new DataOutputStream(new ByteArrayOutputStream())));
+    }
+}
@@ -0,0 +1,102 @@
+package dev.gigaherz.guidebook.guidebook.book;
+
+import net.minecraft.resources.ResourceLocation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SectionRefTest
+{
+    private BookDocument book;
+
+    @BeforeEach
+    public void createBook()
+    {
+        book = new BookDocument(new ResourceLocation("gbook", "xml/test.xml"));
+
+        ChapterData intro = new ChapterData(0);
+        intro.sections.add(new PageData(new SectionRef(0, 0)));
+        book.chapters.add(intro);
+        book.chaptersByName.put("intro", 0);
+
+        ChapterData recipes = new ChapterData(1);
+        recipes.sections.add(new PageData(new SectionRef(1, 0)));
+        recipes.sections.add(new PageData(new SectionRef(1, 1)));
+        recipes.sectionsByName.put("smelting", 1);
+        book.chapters.add(recipes);
+        book.chaptersByName.put("recipes", 1);
+        book.sectionsByName.put("smelting", new SectionRef(1, 1));
+    }
+
+    private SectionRef resolve(String text)
+    {
+        SectionRef ref = SectionRef.fromString(text);
+        assertNull(ref.tryResolve(book));
+        assertTrue(ref.resolvedNames);
+        return ref;
+    }
+
+    private String error(String text)
+    {
+        SectionRef ref = SectionRef.fromString(text);
+        String error = ref.tryResolve(book);
+        assertNotNull(error);
+        assertFalse(ref.resolvedNames);
+        return error;
+    }
+
+    @Test
+    public void resolvesNames()
+    {
+        assertEquals(new SectionRef(1, 1), resolve("recipes:smelting"));
+        assertEquals(new SectionRef(1, 0), resolve("recipes"));
+        assertEquals(new SectionRef(1, 1), resolve(":smelting"));
+    }
+
+    @Test
+    public void resolvesNumbers()
+    {
+        assertEquals(new SectionRef(1, 1), resolve("1:1"));
+        assertEquals(new SectionRef(0, 0), resolve("0"));
+        assertEquals(new SectionRef(1, 1), resolve("recipes:1"));
+    }
+
+    @Test
+    public void explainsBrokenReferences()
+    {
+        assertEquals("there is no chapter named missing", error("missing"));
+        assertEquals("chapter 5 does not exist", error("5"));
+        assertEquals("there is no section named missing in chapter recipes", error("recipes:missing"));
+        assertEquals("section 3 does not exist in chapter intro", error("intro:3"));
+        assertEquals("there is no section named missing", error(":missing"));
+    }
+
+    @Test
+    public void remembersBrokenReferences()
+    {
+        SectionRef ref = SectionRef.fromString("later");
+        String error = ref.tryResolve(book);
+        assertNotNull(error);
+
+        book.chaptersByName.put("later", 0);
+        assertEquals(error, ref.tryResolve(book));
+        assertFalse(ref.resolvedNames);
+    }
+
+    @Test
+    public void copiesKeepNamesUntilResolved()
+    {
+        SectionRef ref = SectionRef.fromString("recipes:smelting");
+        SectionRef copy = ref.copy();
+        assertEquals("recipes", copy.chapterName);
+        assertEquals("smelting", copy.sectionName);
+        assertFalse(copy.resolvedNames);
+
+        assertNull(ref.tryResolve(book));
+        SectionRef resolvedCopy = ref.copy();
+        assertTrue(resolvedCopy.resolvedNames);
+        assertEquals(ref, resolvedCopy);
+        assertEquals("1:1", resolvedCopy.toString());
+    }
+}
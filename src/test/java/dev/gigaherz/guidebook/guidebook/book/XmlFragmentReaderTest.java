@@ -0,0 +1,118 @@
+package dev.gigaherz.guidebook.guidebook.book;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class XmlFragmentReaderTest
+{
+    private static Node parseWithDom(String xml) throws Exception
+    {
+        try (XmlParsers.PooledDocumentBuilder pooledBuilder = XmlParsers.borrowDocumentBuilder())
+        {
+            return pooledBuilder.builder().parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))).getDocumentElement();
+        }
+    }
+
+    private static Node readWithStax(String xml) throws Exception
+    {
+        Document owner;
+        try (XmlParsers.PooledDocumentBuilder pooledBuilder = XmlParsers.borrowDocumentBuilder())
+        {
+            owner = pooledBuilder.builder().newDocument();
+        }
+
+        XMLStreamReader reader = XmlParsers.streamReader(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        reader.nextTag();
+        Node node = XmlFragmentReader.readElement(reader, owner);
+        assertEquals(XMLStreamConstants.END_ELEMENT, reader.getEventType());
+        return node;
+    }
+
+    private static String serialize(Node node) throws Exception
+    {
+        StringWriter writer = new StringWriter();
+        XmlParsers.transformer().transform(new DOMSource(node), new StreamResult(writer));
+        return writer.toString();
+    }
+
+    private static void assertSameAsDom(String xml) throws Exception
+    {
+        Node expected = parseWithDom(xml);
+        Node actual = readWithStax(xml);
+        assertTrue(expected.isEqualNode(actual), () -> {
+            try
+            {
+                return "expected " + serialize(expected) + " but got " + serialize(actual);
+            }
+            catch (Exception e)
+            {
+                return "nodes differ";
+            }
+        });
+    }
+
+    @Test
+    public void readsNestedElementsAndAttributes() throws Exception
+    {
+        assertSameAsDom("<book title=\"Test\">\n  <chapter id=\"one\">\n    <p indent=\"4\">Some text</p>\n    <p/>\n  </chapter>\n</book>");
+    }
+
+    @Test
+    public void mergesTextAroundEntities() throws Exception
+    {
+        assertSameAsDom("<p>a &amp; b &lt; c &#65; d</p>");
+    }
+
+    @Test
+    public void keepsCommentsAndProcessingInstructions() throws Exception
+    {
+        assertSameAsDom("<p>before<!-- note -->after<?target data?></p>");
+    }
+
+    @Test
+    public void keepsCdataSections() throws Exception
+    {
+        assertSameAsDom("<p>a<![CDATA[ <b> & ]]>c</p>");
+    }
+
+    @Test
+    public void keepsPrefixedNames() throws Exception
+    {
+        assertSameAsDom("<page><custom:element custom:size=\"2\">text</custom:element></page>");
+    }
+
+    @Test
+    public void leavesFollowingSiblingsInStream() throws Exception
+    {
+        String xml = "<book><chapter id=\"one\"><p>first</p></chapter><chapter id=\"two\"/></book>";
+        Document owner;
+        try (XmlParsers.PooledDocumentBuilder pooledBuilder = XmlParsers.borrowDocumentBuilder())
+        {
+            owner = pooledBuilder.builder().newDocument();
+        }
+
+        XMLStreamReader reader = XmlParsers.streamReader(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        reader.nextTag();
+        assertEquals("book", XmlFragmentReader.qualifiedName(reader));
+        reader.nextTag();
+        Node first = XmlFragmentReader.readElement(reader, owner);
+        assertEquals("one", first.getAttributes().getNamedItem("id").getNodeValue());
+        assertEquals("first", first.getTextContent());
+
+        reader.nextTag();
+        Node second = XmlFragmentReader.readElement(reader, owner);
+        assertEquals("two", second.getAttributes().getNamedItem("id").getNodeValue());
+        assertFalse(second.hasChildNodes());
+    }
+}
@@ -0,0 +1,89 @@
+package dev.gigaherz.guidebook.guidebook.client;
+
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LineBreakerTest
+{
+    /**
+     * Breaks the text with every char one unit wide.
+     */
+    private static List<String> breakLines(String text, float firstLineWidth, float wrapWidth)
+    {
+        float[] advances = new float[text.length()];
+        Arrays.fill(advances, 1);
+        LineBreaker.ShapedText shaped = LineBreaker.shape(text, advances);
+
+        List<String> lines = Lists.newArrayList();
+        LineBreaker.breakLines(shaped, firstLineWidth, wrapWidth, (start, end) -> lines.add(text.substring(start, end)));
+        return lines;
+    }
+
+    @Test
+    public void keepsTextThatFits()
+    {
+        assertEquals(List.of("hello world"), breakLines("hello world", 20, 20));
+        assertEquals(List.of("hello world"), breakLines("hello world", 11, 11));
+    }
+
+    @Test
+    public void emptyTextHasNoLines()
+    {
+        assertEquals(List.of(), breakLines("", 10, 10));
+    }
+
+    @Test
+    public void breaksAfterLastWhitespaceThatFits()
+    {
+        assertEquals(List.of("hello ", "world ", "foo"), breakLines("hello world foo", 8, 8));
+    }
+
+    @Test
+    public void dropsWhitespaceThatDoesNotFit()
+    {
+        assertEquals(List.of("hello world", "foo"), breakLines("hello world foo", 11, 11));
+    }
+
+    @Test
+    public void splitsWordsLongerThanLine()
+    {
+        assertEquals(List.of("abcd", "efgh", "ij"), breakLines("abcdefghij", 4, 4));
+    }
+
+    @Test
+    public void doesNotBreakAtNonBreakingSpace()
+    {
+        assertEquals(List.of("ab\u00A0c", "d ef"), breakLines("ab\u00A0cd ef", 4, 4));
+        assertEquals(List.of("ab\u00A0cd", "ef"), breakLines("ab\u00A0cd ef", 5, 5));
+    }
+
+    @Test
+    public void usesFirstLineWidth()
+    {
+        assertEquals(List.of("hi ", "there"), breakLines("hi there", 3, 20));
+    }
+
+    @Test
+    public void movesWordThatDoesNotFitFirstLine()
+    {
+        // Nothing fits in the first line, so the text starts at the full width instead of splitting the word.
+        assertEquals(List.of("hello ", "world"), breakLines("hello world", 3, 8));
+    }
+
+    @Test
+    public void breaksByAdvancesNotChars()
+    {
+        String text = "wide thin";
+        float[] advances = {3, 3, 3, 3, 2, 1, 1, 1, 1};
+        LineBreaker.ShapedText shaped = LineBreaker.shape(text, advances);
+
+        List<String> lines = Lists.newArrayList();
+        LineBreaker.breakLines(shaped, 14, 14, (start, end) -> lines.add(text.substring(start, end)));
+        assertEquals(List.of("wide ", "thin"), lines);
+    }
+}
@@ -0,0 +1,99 @@
+package dev.gigaherz.guidebook.guidebook.conditions;
+
+import com.google.common.collect.Maps;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConditionManagerTest
+{
+    // Stands in for a condition that depends on the player, which can't be folded.
+    private static final Predicate<ConditionContext> VARIABLE = ctx -> ctx.getPlayer() != null;
+
+    private final Map<String, Predicate<ConditionContext>> named = Maps.newHashMap();
+
+    private Predicate<ConditionContext> fold(Predicate<ConditionContext> condition)
+    {
+        return ConditionManager.fold(condition, named::get);
+    }
+
+    @Test
+    public void leavesVariableConditions()
+    {
+        assertSame(VARIABLE, fold(VARIABLE));
+    }
+
+    @Test
+    public void foldsAny()
+    {
+        assertSame(BasicConditions.TRUE, fold(new CompositeCondition.Any(List.of(VARIABLE, BasicConditions.TRUE))));
+        assertSame(BasicConditions.FALSE, fold(new CompositeCondition.Any(List.of(BasicConditions.FALSE, BasicConditions.FALSE))));
+
+        Predicate<ConditionContext> folded = fold(new CompositeCondition.Any(List.of(BasicConditions.FALSE, VARIABLE)));
+        assertInstanceOf(CompositeCondition.Any.class, folded);
+        assertEquals(List.of(VARIABLE), ((CompositeCondition) folded).children);
+    }
+
+    @Test
+    public void foldsAll()
+    {
+        assertSame(BasicConditions.FALSE, fold(new CompositeCondition.All(List.of(VARIABLE, BasicConditions.FALSE))));
+        assertSame(BasicConditions.TRUE, fold(new CompositeCondition.All(List.of(BasicConditions.TRUE, BasicConditions.TRUE))));
+
+        Predicate<ConditionContext> folded = fold(new CompositeCondition.All(List.of(BasicConditions.TRUE, VARIABLE)));
+        assertInstanceOf(CompositeCondition.All.class, folded);
+        assertEquals(List.of(VARIABLE), ((CompositeCondition) folded).children);
+    }
+
+    @Test
+    public void foldsNot()
+    {
+        // Not is true unless every child is true.
+        assertSame(BasicConditions.FALSE, fold(new CompositeCondition.Not(List.of(BasicConditions.TRUE))));
+        assertSame(BasicConditions.TRUE, fold(new CompositeCondition.Not(List.of(BasicConditions.FALSE, VARIABLE))));
+
+        Predicate<ConditionContext> folded = fold(new CompositeCondition.Not(List.of(BasicConditions.TRUE, VARIABLE)));
+        assertInstanceOf(CompositeCondition.Not.class, folded);
+        assertEquals(List.of(VARIABLE), ((CompositeCondition) folded).children);
+    }
+
+    @Test
+    public void foldsNestedComposites()
+    {
+        Predicate<ConditionContext> folded = fold(new CompositeCondition.All(List.of(
+                new CompositeCondition.Any(List.of(BasicConditions.FALSE, BasicConditions.TRUE)),
+                VARIABLE)));
+        assertInstanceOf(CompositeCondition.All.class, folded);
+        assertEquals(List.of(VARIABLE), ((CompositeCondition) folded).children);
+    }
+
+    @Test
+    public void foldsReferencesToConstantConditions()
+    {
+        named.put("always", new NamedCondition("always", 0, BasicConditions.TRUE));
+        named.put("never", new NamedCondition("never", 1, BasicConditions.FALSE));
+        named.put("sometimes", new NamedCondition("sometimes", 2, VARIABLE));
+
+        assertSame(BasicConditions.TRUE, fold(new BasicConditions.Ref("always")));
+        assertSame(BasicConditions.FALSE, fold(new BasicConditions.Ref("never")));
+
+        BasicConditions.Ref sometimes = new BasicConditions.Ref("sometimes");
+        assertSame(sometimes, fold(sometimes));
+
+        BasicConditions.Ref undefined = new BasicConditions.Ref("undefined");
+        assertSame(undefined, fold(undefined));
+    }
+
+    @Test
+    public void tellsConstantValues()
+    {
+        assertTrue(ConditionManager.isAlwaysTrue(BasicConditions.TRUE));
+        assertTrue(ConditionManager.isAlwaysFalse(new NamedCondition("never", 0, BasicConditions.FALSE)));
+        assertNull(ConditionManager.getConstantValue(VARIABLE));
+        assertNull(ConditionManager.getConstantValue(null));
+    }
+}
@@ -0,0 +1,82 @@
+package dev.gigaherz.guidebook.guidebook.elements;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ElementTextTest
+{
+    private static final String ALPHABET = " \t\n\rab";
+
+    /**
+     * The implementation compactString had before it was rewritten without regexes, which it must still match.
+     */
+    private static String compactStringWithRegexes(String text, boolean trimLeft, boolean trimRight)
+    {
+        String temp = text.replaceAll("[\n\r]+", "").replaceAll("[ \t]+", " ");
+        if (trimLeft) temp = temp.replaceAll("^[ \t]+", "");
+        if (trimRight) temp = temp.replaceAll("[ \t]+$", "");
+        return temp;
+    }
+
+    @Test
+    public void matchesRegexImplementation()
+    {
+        Random random = new Random(1234);
+        for (int i = 0; i < 20000; i++)
+        {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(16);
+            for (int j = 0; j < length; j++)
+            {
+                sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            String text = sb.toString();
+
+            for (int flags = 0; flags < 4; flags++)
+            {
+                boolean trimLeft = (flags & 1) != 0;
+                boolean trimRight = (flags & 2) != 0;
+                assertEquals(compactStringWithRegexes(text, trimLeft, trimRight), ElementText.compactString(text, trimLeft, trimRight),
+                        () -> "compacting \"" + text.replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t") + "\" trimLeft=" + trimLeft + " trimRight=" + trimRight);
+            }
+        }
+    }
+
+    @Test
+    public void collapsesWhitespace()
+    {
+        assertEquals("a b c", ElementText.compactString("a \t b\n\r\n c", false, false));
+        assertEquals(" a ", ElementText.compactString("\n  a \t", false, false));
+        assertEquals("a", ElementText.compactString("\n  a \t", true, true));
+        assertEquals("", ElementText.compactString(" \t\n", true, false));
+        assertEquals(" ", ElementText.compactString(" \t\n", false, false));
+    }
+
+    @Test
+    public void returnsCompactTextUnchanged()
+    {
+        String text = "already compact text";
+        assertSame(text, ElementText.compactString(text, true, true));
+
+        String spaced = " spaced ";
+        assertSame(spaced, ElementText.compactString(spaced, false, false));
+    }
+
+    @Test
+    public void nullStaysNull()
+    {
+        assertNull(ElementText.compactString(null, true, true));
+    }
+
+    @Test
+    public void detectsWhitespace()
+    {
+        assertTrue(ElementText.isWhitespace(""));
+        assertTrue(ElementText.isWhitespace(" \t\r\n"));
+        assertFalse(ElementText.isWhitespace(" a "));
+        assertFalse(ElementText.isWhitespace("\u00A0"));
+    }
+}
@@ -0,0 +1,62 @@
+package dev.gigaherz.guidebook.guidebook.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrefixSumTreeTest
+{
+    @Test
+    public void startsEmpty()
+    {
+        PrefixSumTree tree = new PrefixSumTree(5);
+        assertEquals(5, tree.size());
+        for (int i = 0; i <= 5; i++)
+        {
+            assertEquals(0, tree.sumBefore(i));
+        }
+    }
+
+    @Test
+    public void sumsValuesBeforeIndex()
+    {
+        PrefixSumTree tree = new PrefixSumTree(4);
+        tree.set(0, 3);
+        tree.set(1, 1);
+        tree.set(3, 5);
+
+        assertEquals(0, tree.sumBefore(0));
+        assertEquals(3, tree.sumBefore(1));
+        assertEquals(4, tree.sumBefore(2));
+        assertEquals(4, tree.sumBefore(3));
+        assertEquals(9, tree.sumBefore(4));
+        assertEquals(5, tree.get(3));
+    }
+
+    @Test
+    public void matchesNaiveSums()
+    {
+        Random random = new Random(1234);
+        int size = 37;
+        PrefixSumTree tree = new PrefixSumTree(size);
+        int[] values = new int[size];
+
+        for (int step = 0; step < 2000; step++)
+        {
+            int index = random.nextInt(size);
+            int value = random.nextInt(20);
+            tree.set(index, value);
+            values[index] = value;
+
+            int query = random.nextInt(size + 1);
+            int expected = 0;
+            for (int i = 0; i < query; i++)
+            {
+                expected += values[i];
+            }
+            assertEquals(expected, tree.sumBefore(query));
+        }
+    }
+}